@@ -17,10 +17,13 @@ import carpet.logging.LoggerRegistry;
 import carpet.script.CarpetScriptServer;
 import carpet.settings.CarpetSettings;
 import carpet.settings.SettingsManager;
+import carpet.utils.CarpetProfiler;
 import carpet.utils.HUDController;
 
 import java.util.Random;
 
+import carpet.helpers.LongOperation;
+import carpet.helpers.TickBudget;
 import carpet.helpers.TickSpeed;
 import com.mojang.brigadier.CommandDispatcher;
 import net.minecraft.command.CommandSource;
@@ -54,9 +57,21 @@ public class CarpetServer // static for now - easier to handle all around the co
 
     public static void tick(MinecraftServer server)
     {
+        TickBudget.start_tick(server.getTickCounter());
         TickSpeed.tick(server);
-        HUDController.update_hud(server);
+        if (!TickSpeed.skip_warp_work(server.getTickCounter()))
+        {
+            TickBudget.defer(() ->
+            {
+                long warp_work_start = TickSpeed.warp_work_start();
+                HUDController.update_hud(server);
+                TickSpeed.warp_work_end(TickSpeed.WARP_HUD, warp_work_start);
+            });
+        }
+        CarpetProfiler.start_section(CarpetProfiler.SCARPET);
         scriptServer.events.tick(); // in 1.14 make sure its called in the aftertick
+        CarpetProfiler.end_current_section();
+        LongOperation.tick(server);
         //in case something happens
         CarpetSettings.impendingFillSkipUpdates = false;
     }
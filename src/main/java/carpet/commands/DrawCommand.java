@@ -1,5 +1,6 @@
 package carpet.commands;
 
+import carpet.helpers.LongOperation;
 import carpet.settings.CarpetSettings;
 import carpet.utils.Messenger;
 import com.google.common.collect.Lists;
@@ -64,7 +65,6 @@ public class DrawCommand
     private static int drawCircle(CommandSource source, BlockPos pos, double radiusX, double radiusY, double radiusZ,
                                   BlockStateInput block, Predicate<BlockWorldState> replacement, boolean solid)
     {
-        int affected = 0;
         WorldServer world = source.getWorld();
 
         radiusX += 0.5;
@@ -80,6 +80,9 @@ public class DrawCommand
         final int ceilRadiusZ = (int) Math.ceil(radiusZ);
 
         BlockPos.MutableBlockPos mbpos = new BlockPos.MutableBlockPos(pos);
+        // positions are only buffered when placing is spread over ticks
+        final boolean slicing = LongOperation.enabled();
+        List<BlockPos> shape = slicing ? Lists.<BlockPos>newArrayList() : null;
         List<BlockPos> list = Lists.<BlockPos>newArrayList();
 
         double nextXn = 0;
@@ -119,25 +122,15 @@ public class DrawCommand
                         {
                             for (int zmod = -1; zmod < 2; zmod += 2)
                             {
+                                if (slicing)
+                                {
+                                    shape.add(new BlockPos(pos.getX()+xmod*x, pos.getY()+ymod*y, pos.getZ()+zmod*z));
+                                    continue;
+                                }
                                 mbpos.setPos(pos.getX()+xmod*x, pos.getY()+ymod*y, pos.getZ()+zmod*z);
-                                if (replacement == null || replacement.test(
-                                        new BlockWorldState( world, mbpos, true)))
+                                if (place(world, mbpos, block, replacement))
                                 {
-                                    TileEntity tileentity = world.getTileEntity(mbpos);
-                                    if (tileentity instanceof IInventory)
-                                    {
-                                        ((IInventory)tileentity).clear();
-                                    }
-
-                                    if (block.place(
-                                            world,
-                                            mbpos,
-                                            2 | (CarpetSettings.fillUpdates ?0:1024)
-                                    ))
-                                    {
-                                        list.add(mbpos.toImmutable());
-                                        ++affected;
-                                    }
+                                    list.add(mbpos.toImmutable());
                                 }
                             }
                         }
@@ -145,6 +138,46 @@ public class DrawCommand
                 }
             }
         }
+        if (!slicing)
+        {
+            finish(source, world, list);
+            return 1;
+        }
+        // placing is the slow part, with fillTimeSlice it is spread over ticks
+        LongOperation.submit(source, "Draw", shape.size(), (i) ->
+        {
+            mbpos.setPos(shape.get((int)i));
+            if (place(world, mbpos, block, replacement))
+            {
+                list.add(mbpos.toImmutable());
+            }
+            return true;
+        }, () -> finish(source, world, list));
+
+        return 1;
+    }
+    private static boolean place(WorldServer world, BlockPos.MutableBlockPos mbpos, BlockStateInput block,
+                                 Predicate<BlockWorldState> replacement)
+    {
+        if (replacement != null && !replacement.test(
+                new BlockWorldState( world, mbpos, true)))
+        {
+            return false;
+        }
+        TileEntity tileentity = world.getTileEntity(mbpos);
+        if (tileentity instanceof IInventory)
+        {
+            ((IInventory)tileentity).clear();
+        }
+
+        return block.place(
+                world,
+                mbpos,
+                2 | (CarpetSettings.fillUpdates ?0:1024)
+        );
+    }
+    private static void finish(CommandSource source, WorldServer world, List<BlockPos> list)
+    {
         if (CarpetSettings.fillUpdates)
         {
 
@@ -154,9 +187,7 @@ public class DrawCommand
                 world.notifyNeighbors(blockpos1, blokc);
             }
         }
-        Messenger.m(source, "gi Filled "+affected+" blocks");
-
-        return 1;
+        Messenger.m(source, "gi Filled "+list.size()+" blocks");
     }
     private static double lengthSq(double x, double y, double z)
         {
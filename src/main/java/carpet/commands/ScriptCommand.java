@@ -1,14 +1,17 @@
 package carpet.commands;
 
 import carpet.CarpetServer;
+import carpet.helpers.LongOperation;
 import carpet.script.CarpetEventServer;
 import carpet.script.CarpetExpression;
 import carpet.script.Expression;
 import carpet.script.ExpressionInspector;
+import carpet.script.ParsedScriptCache;
 import carpet.script.ScriptHost;
 import carpet.script.Tokenizer;
 import carpet.script.exception.CarpetExpressionException;
 import carpet.settings.CarpetSettings;
+import carpet.utils.CarpetProfiler;
 import carpet.utils.Messenger;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.StringArgumentType;
@@ -251,10 +254,41 @@ public class ScriptCommand
                                                 StringArgumentType.getString(cc, "call")
                                         )?1:0))));
 
+        LiteralArgumentBuilder<CommandSource> p = literal("profile").requires( (player) -> player.hasPermissionLevel(2) ).
+                executes( (cc) ->
+                {
+                    Messenger.send(cc.getSource(), CarpetProfiler.scarpet_report(cc.getSource().getServer()));
+                    return 1;
+                }).
+                then(literal("reset").
+                        executes( (cc) ->
+                        {
+                            CarpetProfiler.reset_scarpet_totals(cc.getSource().getServer());
+                            Messenger.m(cc.getSource(), "w Scarpet callback times reset");
+                            return 1;
+                        }));
+        LiteralArgumentBuilder<CommandSource> k = literal("cache").requires( (player) -> player.hasPermissionLevel(2) ).
+                executes( (cc) ->
+                {
+                    long hits = ParsedScriptCache.getHits();
+                    long misses = ParsedScriptCache.getMisses();
+                    Messenger.m(cc.getSource(), "w Parsed scripts cached: ", "wb "+ParsedScriptCache.size(),
+                            "w , hits: ", "wb "+hits, "w , misses: ", "wb "+misses,
+                            "g  ("+(hits+misses == 0 ? 0 : 100*hits/(hits+misses))+"% hit rate)");
+                    return 1;
+                }).
+                then(literal("clear").
+                        executes( (cc) ->
+                        {
+                            ParsedScriptCache.clear();
+                            Messenger.m(cc.getSource(), "w Parsed script cache cleared");
+                            return 1;
+                        }));
+
 
         dispatcher.register(literal("script").
                 requires((player) -> CarpetSettings.commandScript).
-                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q));
+                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(p).then(k));
         dispatcher.register(literal("script").
                 requires((player) -> CarpetSettings.commandScript).
                 then(literal("in").
@@ -390,7 +424,7 @@ public class ScriptCommand
         CommandSource source = context.getSource();
         ScriptHost host = getHost(context);
         handleCall(source, () -> {
-            CarpetExpression ex = new CarpetExpression(expr, source, new BlockPos(0, 0, 0));
+            CarpetExpression ex = CarpetExpression.cached(host, expr, source, new BlockPos(0, 0, 0));
             return ex.scriptRunCommand(host, new BlockPos(source.getPos()));
         });
         return 1;
@@ -401,39 +435,37 @@ public class ScriptCommand
         CommandSource source = context.getSource();
         ScriptHost host = getHost(context);
         MutableBoundingBox area = new MutableBoundingBox(a, b);
-        CarpetExpression cexpr = new CarpetExpression(expr, source, origin);
+        CarpetExpression cexpr = CarpetExpression.cached(host, expr, source, origin);
         if (area.getXSize() * area.getYSize() * area.getZSize() > CarpetSettings.fillLimit)
         {
             Messenger.m(source, "r too many blocks to evaluate: " + area.getXSize() * area.getYSize() * area.getZSize());
             return 1;
         }
-        int successCount = 0;
-        try
+        final int sizeY = area.getYSize();
+        final int sizeZ = area.getZSize();
+        final int volume = area.getXSize() * sizeY * sizeZ;
+        int [] successCount = {0};
+        boolean done = LongOperation.submit(source, "Scan", volume, (i) ->
         {
-            for (int x = area.minX; x <= area.maxX; x++)
+            if (CarpetServer.scriptServer.stopAll)
+                return false;
+            try
             {
-                for (int y = area.minY; y <= area.maxY; y++)
-                {
-                    for (int z = area.minZ; z <= area.maxZ; z++)
-                    {
-                        try
-                        {
-                            if (cexpr.fillAndScanCommand(host, x, y, z)) successCount++;
-                        }
-                        catch (ArithmeticException ignored)
-                        {
-                        }
-                    }
-                }
+                if (cexpr.fillAndScanCommand(host, area.minX+(int)(i / sizeZ / sizeY), area.minY+(int)(i / sizeZ % sizeY), area.minZ+(int)(i % sizeZ)))
+                    successCount[0]++;
             }
-        }
-        catch (CarpetExpressionException exc)
-        {
-            Messenger.m(source, "r Error while processing command: "+exc);
-            return 0;
-        }
-        Messenger.m(source, "w Expression successful in " + successCount + " out of " + area.getXSize() * area.getYSize() * area.getZSize() + " blocks");
-        return successCount;
+            catch (CarpetExpressionException exc)
+            {
+                Messenger.m(source, "r Error while processing command: "+exc);
+                return false;
+            }
+            catch (ArithmeticException ignored)
+            {
+            }
+            return true;
+        }, () -> Messenger.m(source, "w Expression successful in " + successCount[0] + " out of " + volume + " blocks"));
+        // a queued scan has nothing counted yet, its result only shows in chat
+        return done ? successCount[0] : 0;
 
     }
 
@@ -444,7 +476,7 @@ public class ScriptCommand
         CommandSource source = context.getSource();
         ScriptHost host = getHost(context);
         MutableBoundingBox area = new MutableBoundingBox(a, b);
-        CarpetExpression cexpr = new CarpetExpression(expr, source, origin);
+        CarpetExpression cexpr = CarpetExpression.cached(host, expr, source, origin);
         if (area.getXSize() * area.getYSize() * area.getZSize() > CarpetSettings.fillLimit)
         {
             Messenger.m(source, "r too many blocks to evaluate: "+ area.getXSize() * area.getYSize() * area.getZSize());
@@ -452,73 +484,70 @@ public class ScriptCommand
         }
 
         boolean[][][] volume = new boolean[area.getXSize()][area.getYSize()][area.getZSize()];
+        boolean outline = "outline".equalsIgnoreCase(mode);
+        boolean[][][] newVolume = outline ? new boolean[area.getXSize()][area.getYSize()][area.getZSize()] : volume;
 
         BlockPos.MutableBlockPos mbpos = new BlockPos.MutableBlockPos(origin);
         WorldServer world = source.getWorld();
 
-
-        for (int x = area.minX; x <= area.maxX; x++)
+        final int maxx = area.getXSize()-1;
+        final int maxy = area.getYSize()-1;
+        final int maxz = area.getZSize()-1;
+        final int size = area.getXSize() * area.getYSize() * area.getZSize();
+        // each stage goes block by block over the whole area, so with fillTimeSlice any of them can continue in the next tick
+        List<Integer> stages = new ArrayList<>();
+        stages.add(FILL_EVALUATE);
+        if (outline)
+            stages.add(FILL_OUTLINE);
+        stages.add(FILL_PLACE);
+        if (CarpetSettings.fillUpdates && block != null)
+            stages.add(FILL_UPDATE);
+        int [] affected = {0};
+        LongOperation.submit(source, outline ? "Outline" : "Fill", (long)size * stages.size(), (i) ->
         {
-            for (int y = area.minY; y <= area.maxY; y++)
+            int stage = stages.get((int)(i / size));
+            int index = (int)(i % size);
+            int x = index / (maxz+1) / (maxy+1);
+            int y = index / (maxz+1) % (maxy+1);
+            int z = index % (maxz+1);
+            switch (stage)
             {
-                for (int z = area.minZ; z <= area.maxZ; z++)
-                {
+                case FILL_EVALUATE:
+                    if (CarpetServer.scriptServer.stopAll)
+                        return false;
                     try
                     {
-                        if (cexpr.fillAndScanCommand(host, x, y, z))
+                        if (cexpr.fillAndScanCommand(host, x+area.minX, y+area.minY, z+area.minZ))
                         {
-                            volume[x-area.minX][y-area.minY][z-area.minZ]=true;
+                            volume[x][y][z]=true;
                         }
                     }
                     catch (CarpetExpressionException e)
                     {
                         Messenger.m(source, "r Exception while filling the area:\n","l "+e.getMessage());
-                        return 0;
+                        return false;
                     }
                     catch (ArithmeticException e)
                     {
                     }
-                }
-            }
-        }
-        final int maxx = area.getXSize()-1;
-        final int maxy = area.getYSize()-1;
-        final int maxz = area.getZSize()-1;
-        if ("outline".equalsIgnoreCase(mode))
-        {
-            boolean[][][] newVolume = new boolean[area.getXSize()][area.getYSize()][area.getZSize()];
-            for (int x = 0; x <= maxx; x++)
-            {
-                for (int y = 0; y <= maxy; y++)
-                {
-                    for (int z = 0; z <= maxz; z++)
+                    break;
+                case FILL_OUTLINE:
+                    if (volume[x][y][z])
                     {
-                        if (volume[x][y][z])
+                        if ( (  (x != 0    && !volume[x-1][y  ][z  ]) ||
+                                (x != maxx && !volume[x+1][y  ][z  ]) ||
+                                (y != 0    && !volume[x  ][y-1][z  ]) ||
+                                (y != maxy && !volume[x  ][y+1][z  ]) ||
+                                (z != 0    && !volume[x  ][y  ][z-1]) ||
+                                (z != maxz && !volume[x  ][y  ][z+1])
+                        ))
                         {
-                            if ( (  (x != 0    && !volume[x-1][y  ][z  ]) ||
-                                    (x != maxx && !volume[x+1][y  ][z  ]) ||
-                                    (y != 0    && !volume[x  ][y-1][z  ]) ||
-                                    (y != maxy && !volume[x  ][y+1][z  ]) ||
-                                    (z != 0    && !volume[x  ][y  ][z-1]) ||
-                                    (z != maxz && !volume[x  ][y  ][z+1])
-                            ))
-                            {
-                                newVolume[x][y][z] = true;
-                            }
+                            newVolume[x][y][z] = true;
                         }
                     }
-                }
-            }
-            volume = newVolume;
-        }
-        int affected = 0;
-        for (int x = 0; x <= maxx; x++)
-        {
-            for (int y = 0; y <= maxy; y++)
-            {
-                for (int z = 0; z <= maxz; z++)
-                {
-                    if (volume[x][y][z])
+                    break;
+                case FILL_PLACE:
+                    if (newVolume[x][y][z])
                     {
                         mbpos.setPos(x+area.minX, y+area.minY, z+area.minZ);
                         if (replacement == null || replacement.test(
@@ -535,33 +564,28 @@ public class ScriptCommand
                                     2 | (CarpetSettings.fillUpdates ?0:1024)
                             ))
                             {
-                                ++affected;
+                                ++affected[0];
                             }
                         }
                     }
-                }
-            }
-        }
-        if (CarpetSettings.fillUpdates && block != null)
-        {
-            for (int x = 0; x <= maxx; x++)
-            {
-                for (int y = 0; y <= maxy; y++)
-                {
-                    for (int z = 0; z <= maxz; z++)
+                    break;
+                case FILL_UPDATE:
+                    if (newVolume[x][y][z])
                     {
-                        if (volume[x][y][z])
-                        {
-                            mbpos.setPos(x+area.minX, y+area.minY, z+area.minZ);
-                            Block blokc = world.getBlockState(mbpos).getBlock();
-                            world.notifyNeighbors(mbpos, blokc);
-                        }
+                        mbpos.setPos(x+area.minX, y+area.minY, z+area.minZ);
+                        Block blokc = world.getBlockState(mbpos).getBlock();
+                        world.notifyNeighbors(mbpos, blokc);
                     }
-                }
+                    break;
             }
-        }
-        Messenger.m(source, "gi Affected "+affected+" blocks in "+area.getXSize() * area.getYSize() * area.getZSize()+" block volume");
+            return true;
+        }, () -> Messenger.m(source, "gi Affected "+affected[0]+" blocks in "+size+" block volume"));
         return 1;
     }
+
+    private static final int FILL_EVALUATE = 0;
+    private static final int FILL_OUTLINE = 1;
+    private static final int FILL_PLACE = 2;
+    private static final int FILL_UPDATE = 3;
 }
 
@@ -1,16 +1,34 @@
 package carpet.commands;
 
+import carpet.CarpetServer;
+import carpet.helpers.RegionSnapshot;
 import carpet.helpers.TickSpeed;
+import carpet.script.CarpetExpression;
+import carpet.script.exception.CarpetExpressionException;
 import carpet.settings.CarpetSettings;
 import carpet.utils.CarpetProfiler;
+import carpet.utils.CarpetProfilerTimeline;
 import carpet.utils.Messenger;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.ISuggestionProvider;
+import net.minecraft.command.arguments.BlockPosArgument;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.text.ITextComponent;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import static com.mojang.brigadier.arguments.FloatArgumentType.*;
 import static com.mojang.brigadier.arguments.IntegerArgumentType.*;
@@ -25,11 +43,28 @@ public class TickCommand
                 requires((player) -> CarpetSettings.commandTick).
                 then(literal("rate").
                         executes((c) -> queryTps(c.getSource())).
+                        then(literal("dimension").
+                                then(argument("dimension", word()).
+                                        suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"overworld","the_nether","the_end"},b)).
+                                        executes((c) -> queryDimensionTps(c.getSource(), getString(c, "dimension"))).
+                                        then(literal("reset").
+                                                executes((c) -> setDimensionTps(c.getSource(), getString(c, "dimension"), 0.0F))).
+                                        then(argument("rate", floatArg(0.1F, 500.0F)).
+                                                suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"5.0","10.0"},b)).
+                                                executes((c) -> setDimensionTps(c.getSource(), getString(c, "dimension"), getFloat(c, "rate")))))).
                         then(argument("rate", floatArg(0.1F, 500.0F)).
                                 suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"20.0"},b)).
                                 executes((c) -> setTps(c.getSource(), getFloat(c, "rate"))))).
                 then(literal("warp").
                         executes( (c)-> setWarp(c.getSource(), 0, null)).
+                        then(literal("until").
+                                then(argument("ticks", integer(1,4000000)).
+                                        suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"72000","720000"},b)).
+                                        then(argument("condition", greedyString()).
+                                                executes( (c) -> setWarpUntil(
+                                                        c.getSource(),
+                                                        getInteger(c,"ticks"),
+                                                        getString(c, "condition")))))).
                         then(argument("ticks", integer(0,4000000)).
                                 suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"3600","72000"},b)).
                                 executes((c) -> setWarp(c.getSource(), getInteger(c,"ticks"), null)).
@@ -38,21 +73,69 @@ public class TickCommand
                                                 c.getSource(),
                                                 getInteger(c,"ticks"),
                                                 getString(c, "tail command")))))).
-                then(literal("freeze").executes( (c)-> toggleFreeze(c.getSource()))).
+                then(literal("freeze").
+                        executes( (c)-> toggleFreeze(c.getSource(), false)).
+                        then(literal("deep").
+                                executes( (c)-> toggleFreeze(c.getSource(), true)))).
                 then(literal("step").
                         executes((c) -> step(1)).
                         then(argument("ticks", integer(1,72000)).
                                 suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"20"},b)).
                                 executes((c) -> step(getInteger(c,"ticks"))))).
+                then(literal("snapshot").
+                        executes( (c) -> listSnapshots(c.getSource())).
+                        then(literal("save").
+                                then(argument("name", word()).
+                                        then(argument("from", BlockPosArgument.blockPos()).
+                                                then(argument("to", BlockPosArgument.blockPos()).
+                                                        executes( (c) -> saveSnapshot(
+                                                                c.getSource(),
+                                                                getString(c, "name"),
+                                                                BlockPosArgument.getBlockPos(c, "from"),
+                                                                BlockPosArgument.getBlockPos(c, "to"))))))).
+                        then(literal("restore").
+                                then(argument("name", word()).
+                                        suggests( (c, b) -> ISuggestionProvider.suggest(RegionSnapshot.names(), b)).
+                                        executes( (c) -> restoreSnapshot(c.getSource(), getString(c, "name"))))).
+                        then(literal("drop").
+                                then(argument("name", word()).
+                                        suggests( (c, b) -> ISuggestionProvider.suggest(RegionSnapshot.names(), b)).
+                                        executes( (c) -> dropSnapshot(c.getSource(), getString(c, "name")))))).
                 then(literal("superHot").executes( (c)-> toggleSuperHot(c.getSource()))).
                 then(literal("health").
-                        executes( (c) -> healthReport(c.getSource(), 100)).
+                        executes( (c) -> healthReport(c.getSource(), 100, false)).
+                        then(literal("percentiles").
+                                executes( (c) -> healthPercentiles(c.getSource()))).
+                        then(literal("slowest").
+                                executes( (c) -> healthSlowest(c.getSource())).
+                                then(literal("dump").
+                                        executes( (c) -> healthSlowestDump(c.getSource()))).
+                                then(literal("clear").
+                                        executes( (c) -> healthSlowestClear(c.getSource())))).
+                        then(literal("allocations").
+                                executes( (c) -> healthReport(c.getSource(), 100, true)).
+                                then(argument("ticks", integer(20,24000)).
+                                        executes( (c) -> healthReport(c.getSource(), getInteger(c, "ticks"), true)))).
                         then(argument("ticks", integer(20,24000)).
-                                executes( (c) -> healthReport(c.getSource(), getInteger(c, "ticks"))))).
+                                executes( (c) -> healthReport(c.getSource(), getInteger(c, "ticks"), false)))).
                 then(literal("entities").
-                        executes((c) -> healthEntities(c.getSource(), 100)).
+                        executes((c) -> healthEntities(c.getSource(), 100, 1, false)).
+                        then(literal("allocations").
+                                executes((c) -> healthEntities(c.getSource(), 100, 1, true)).
+                                then(argument("ticks", integer(20,24000)).
+                                        executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks"), 1, true)))).
+                        then(literal("sampled").
+                                then(argument("rate", integer(2,1000)).
+                                        suggests( (c, b) -> ISuggestionProvider.suggest(new String[]{"10","100"},b)).
+                                        executes((c) -> healthEntities(c.getSource(), 100, getInteger(c, "rate"), false)).
+                                        then(argument("ticks", integer(20,24000)).
+                                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks"), getInteger(c, "rate"), false))))).
+                        then(literal("chunks").
+                                executes((c) -> healthChunks(c.getSource(), 100)).
+                                then(argument("ticks", integer(20,24000)).
+                                        executes((c) -> healthChunks(c.getSource(), getInteger(c, "ticks"))))).
                         then(argument("ticks", integer(20,24000)).
-                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks")))));
+                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks"), 1, false))));
 
 
         dispatcher.register(literalargumentbuilder);
@@ -72,6 +155,47 @@ public class TickCommand
         return (int)TickSpeed.tickrate;
     }
 
+    private static DimensionType parseDimension(CommandSource source, String name)
+    {
+        DimensionType dimension = DimensionType.byName(new ResourceLocation(name));
+        if (dimension == null)
+        {
+            Messenger.m(source, "r Unknown dimension: "+name);
+        }
+        return dimension;
+    }
+
+    private static int setDimensionTps(CommandSource source, String name, float tps)
+    {
+        DimensionType dimension = parseDimension(source, name);
+        if (dimension == null)
+        {
+            return 0;
+        }
+        TickSpeed.dimension_tickrate(dimension, tps);
+        return queryDimensionTps(source, name);
+    }
+
+    private static int queryDimensionTps(CommandSource source, String name)
+    {
+        DimensionType dimension = parseDimension(source, name);
+        if (dimension == null)
+        {
+            return 0;
+        }
+        float tps = TickSpeed.dimension_tickrate(dimension);
+        if (TickSpeed.dimension_tickrates().containsKey(dimension))
+        {
+            Messenger.m(source, "w Tick rate in "+name+" is: ",String.format("wb %.1f", tps),
+                    String.format("w , ticking %.0f%% of the server ticks", 100.0F*tps/TickSpeed.tickrate));
+        }
+        else
+        {
+            Messenger.m(source, "w "+name+" follows the global tick rate: ",String.format("wb %.1f", tps));
+        }
+        return (int)tps;
+    }
+
     private static int setWarp(CommandSource source, int advance, String tail_command)
     {
         EntityPlayer player = null;
@@ -90,10 +214,48 @@ public class TickCommand
         return 1;
     }
 
-    private static int toggleFreeze(CommandSource source)
+    private static int setWarpUntil(CommandSource source, int advance, String condition)
+    {
+        EntityPlayer player = null;
+        try
+        {
+            player = source.asPlayer();
+        }
+        catch (CommandSyntaxException ignored)
+        {
+        }
+        CarpetExpression expression = new CarpetExpression(condition, source, new BlockPos(0, 0, 0));
+        BooleanSupplier test = expression.warpCondition(CarpetServer.scriptServer.globalHost, new BlockPos(source.getPos()));
+        try
+        {
+            if (test.getAsBoolean())
+            {
+                Messenger.m(source, "gi Condition is already met");
+                return 0;
+            }
+        }
+        catch (CarpetExpressionException e)
+        {
+            Messenger.m(source, "r Error in warp condition: "+e.getMessage());
+            return 0;
+        }
+        ITextComponent message = TickSpeed.tickrate_advance(player, advance, null, source, test);
+        if (message != null)
+        {
+            source.sendFeedback(message, false);
+        }
+        return 1;
+    }
+
+    private static int toggleFreeze(CommandSource source, boolean deep)
     {
         TickSpeed.is_paused = !TickSpeed.is_paused;
-        if (TickSpeed.is_paused)
+        TickSpeed.deep_freeze = TickSpeed.is_paused && deep;
+        if (TickSpeed.deep_freeze)
+        {
+            Messenger.m(source, "gi Game is paused, chunks stop loading, unloading and saving");
+        }
+        else if (TickSpeed.is_paused)
         {
             Messenger.m(source, "gi Game is paused");
         }
@@ -110,6 +272,77 @@ public class TickCommand
         return 1;
     }
 
+    private static int listSnapshots(CommandSource source)
+    {
+        if (RegionSnapshot.names().isEmpty())
+        {
+            Messenger.m(source, "w No region snapshots saved");
+            return 0;
+        }
+        Messenger.m(source, "w Region snapshots:");
+        for (String name : RegionSnapshot.names())
+        {
+            RegionSnapshot snapshot = RegionSnapshot.get(name);
+            MutableBoundingBox box = snapshot.getBox();
+            Messenger.m(source, "w  - ", "wb "+name, String.format("w : [%d, %d, %d] to [%d, %d, %d] in %s",
+                    box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, snapshot.getDimension()),
+                    "^g Click to restore", "!/tick snapshot restore "+name);
+        }
+        return RegionSnapshot.names().size();
+    }
+
+    private static int saveSnapshot(CommandSource source, String name, BlockPos from, BlockPos to)
+    {
+        MutableBoundingBox area = new MutableBoundingBox(from, to);
+        int volume = area.getXSize()*area.getYSize()*area.getZSize();
+        if (volume > CarpetSettings.fillLimit)
+        {
+            Messenger.m(source, "r too many blocks to save: "+volume);
+            return 0;
+        }
+        if (!source.getWorld().isAreaLoaded(area))
+        {
+            Messenger.m(source, "r Region is not loaded");
+            return 0;
+        }
+        long start = System.nanoTime();
+        RegionSnapshot snapshot = RegionSnapshot.save(name, source.getWorld(), area);
+        long time = System.nanoTime()-start;
+        Messenger.m(source, String.format("w Saved %s: %d blocks with %d states in %.1fkB, %d tile entities, %d entities, %d scheduled ticks in %.2fms",
+                name, volume, snapshot.getPaletteSize(), snapshot.getBlockBytes()/1024.0D, snapshot.getTileEntityCount(),
+                snapshot.getEntityCount(), snapshot.getScheduledTickCount(), time/1000000.0D));
+        return volume;
+    }
+
+    private static int restoreSnapshot(CommandSource source, String name)
+    {
+        RegionSnapshot snapshot = RegionSnapshot.get(name);
+        if (snapshot == null)
+        {
+            Messenger.m(source, "r No region snapshot named "+name);
+            return 0;
+        }
+        long start = System.nanoTime();
+        if (!snapshot.restore(source.getServer()))
+        {
+            Messenger.m(source, "r Region of "+name+" is not loaded");
+            return 0;
+        }
+        Messenger.m(source, String.format("w Restored %s in %.2fms", name, (System.nanoTime()-start)/1000000.0D));
+        return 1;
+    }
+
+    private static int dropSnapshot(CommandSource source, String name)
+    {
+        if (!RegionSnapshot.drop(name))
+        {
+            Messenger.m(source, "r No region snapshot named "+name);
+            return 0;
+        }
+        Messenger.m(source, "w Dropped "+name);
+        return 1;
+    }
+
     private static int toggleSuperHot(CommandSource source)
     {
         TickSpeed.is_superHot = !TickSpeed.is_superHot;
@@ -124,17 +357,91 @@ public class TickCommand
         return 1;
     }
 
-    private static int healthReport(CommandSource source, int ticks)
+    private static int healthReport(CommandSource source, int ticks, boolean allocations)
     {
-        CarpetProfiler.prepare_tick_report(ticks);
+        if (allocations && !CarpetProfiler.allocations_available())
+        {
+            Messenger.m(source, "r Allocation tracking is not supported by this JVM");
+            return 0;
+        }
+        CarpetProfiler.prepare_tick_report(ticks, allocations);
         return 1;
     }
 
-    private static int healthEntities(CommandSource source, int ticks)
+    private static int healthPercentiles(CommandSource source)
     {
-        CarpetProfiler.prepare_entity_report(ticks);
+        Messenger.send(source, CarpetProfiler.history_report());
         return 1;
     }
 
-}
+    private static int healthSlowest(CommandSource source)
+    {
+        if (CarpetSettings.slowTickTimelines == 0)
+        {
+            Messenger.m(source, "r Slow tick timelines are disabled, set slowTickTimelines rule to enable them");
+            return 0;
+        }
+        List<String> lines = CarpetProfilerTimeline.summary();
+        if (lines.isEmpty())
+        {
+            Messenger.m(source, String.format("w No ticks above %d%% of %dms captured yet", CarpetSettings.slowTickBudget, TickSpeed.mspt));
+            return 0;
+        }
+        Messenger.m(source, "w Slowest ticks:");
+        for (String line : lines)
+        {
+            Messenger.m(source, "w  - "+line);
+        }
+        Messenger.m(source, "g Export them with ", "g /tick health slowest dump", "^g Click to write the timelines", "!/tick health slowest dump");
+        return lines.size();
+    }
+
+    private static int healthSlowestDump(CommandSource source)
+    {
+        if (CarpetProfilerTimeline.captured() == 0)
+        {
+            Messenger.m(source, "r No slow ticks captured");
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        String name = "slow_ticks_"+new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date())+".json";
+        File file = server.getActiveAnvilConverter().getFile(server.getFolderName(), "profiler/"+name);
+        try
+        {
+            CarpetProfilerTimeline.dump(file);
+        }
+        catch (IOException e)
+        {
+            CarpetSettings.LOG.error("Failed to write slow tick timelines", e);
+            Messenger.m(source, "r Failed to write "+name+": "+e.getMessage());
+            return 0;
+        }
+        Messenger.m(source, "w Wrote "+CarpetProfilerTimeline.captured()+" ticks to profiler/"+name+", open it in chrome://tracing or ui.perfetto.dev");
+        return 1;
+    }
 
+    private static int healthSlowestClear(CommandSource source)
+    {
+        CarpetProfilerTimeline.clear();
+        Messenger.m(source, "w Slow tick timelines cleared");
+        return 1;
+    }
+
+    private static int healthEntities(CommandSource source, int ticks, int sample_rate, boolean allocations)
+    {
+        if (allocations && !CarpetProfiler.allocations_available())
+        {
+            Messenger.m(source, "r Allocation tracking is not supported by this JVM");
+            return 0;
+        }
+        CarpetProfiler.prepare_entity_report(ticks, sample_rate, allocations);
+        return 1;
+    }
+
+    private static int healthChunks(CommandSource source, int ticks)
+    {
+        CarpetProfiler.prepare_chunk_report(ticks);
+        return 1;
+    }
+
+}
@@ -0,0 +1,195 @@
+package carpet.helpers;
+
+import carpet.settings.CarpetSettings;
+import carpet.utils.Messenger;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.BlockWorldState;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.arguments.BlockStateInput;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MutableBoundingBox;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.world.WorldServer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * fillTimeSlice: block by block work of big commands, spread over ticks.
+ * Queued operations run one after another on the server thread, each tick for at most fillTimeSlice ms,
+ * so ticks stay short and the watchdog has nothing to complain about.
+ */
+public class LongOperation
+{
+    public interface Step
+    {
+        /**
+         * Does the index-th unit of work.
+         * @return false to abandon the operation, its finish won't run
+         */
+        boolean run(long index);
+    }
+
+    private static final Deque<LongOperation> running = new ArrayDeque<>();
+
+    private final CommandSource source;
+    private final String name;
+    private final long total;
+    private final Step step;
+    private final Runnable finish;
+    private long done = 0L;
+
+    private LongOperation(CommandSource source, String name, long total, Step step, Runnable finish)
+    {
+        this.source = source;
+        this.name = name;
+        this.total = total;
+        this.step = step;
+        this.finish = finish;
+    }
+
+    public static boolean enabled()
+    {
+        return CarpetSettings.fillTimeSlice > 0;
+    }
+
+    /**
+     * Runs total steps followed by finish, right away if nothing else is queued and it fits in the time slice,
+     * otherwise over the next ticks. Without fillTimeSlice it all runs right away.
+     * @return true if it is done already, false if it got queued and its results are only reported in chat
+     */
+    public static boolean submit(CommandSource source, String name, long total, Step step, Runnable finish)
+    {
+        LongOperation operation = new LongOperation(source, name, total, step, finish);
+        if (!enabled())
+        {
+            operation.run(Long.MAX_VALUE);
+            return true;
+        }
+        if (running.isEmpty() && operation.run(System.nanoTime()+CarpetSettings.fillTimeSlice*1000000L))
+        {
+            return true;
+        }
+        running.add(operation);
+        Messenger.m(source, "gi "+name+" continues over the next ticks, "+running.size()+" operations queued");
+        return false;
+    }
+
+    public static void tick(MinecraftServer server)
+    {
+        if (running.isEmpty())
+        {
+            return;
+        }
+        // with the rule switched off in the meantime, whatever is left finishes now
+        long deadline = enabled() ? System.nanoTime()+CarpetSettings.fillTimeSlice*1000000L : Long.MAX_VALUE;
+        while (!running.isEmpty() && running.peek().run(deadline))
+        {
+            running.poll();
+        }
+        if (server.getTickCounter() % 20 == 0)
+        {
+            for (LongOperation operation : running)
+            {
+                Messenger.m(operation.source, String.format("gi %s: %d%% (%d/%d)", operation.name,
+                        100*operation.done/Math.max(operation.total, 1L), operation.done, operation.total));
+            }
+        }
+    }
+
+    public static int pending()
+    {
+        return running.size();
+    }
+
+    /**
+     * @return true if the operation is done
+     */
+    private boolean run(long deadline)
+    {
+        try
+        {
+            while (done < total)
+            {
+                if (!step.run(done++))
+                {
+                    done = total;
+                    return true;
+                }
+                if ((done & 63) == 0 && System.nanoTime() >= deadline)
+                {
+                    return false;
+                }
+            }
+            finish.run();
+        }
+        catch (RuntimeException e)
+        {
+            CarpetSettings.LOG.error(name+" failed", e);
+            Messenger.m(source, "r "+name+" failed: "+e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Vanilla /fill over the area in slices, with the filter of the fill mode.
+     * @return number of blocks placed, 0 if the fill got queued, the count is then only reported in chat
+     */
+    public static int fill(CommandSource source, MutableBoundingBox area, Predicate<BlockWorldState> replacement,
+                            Function<BlockPos, BlockStateInput> filter)
+    {
+        WorldServer world = source.getWorld();
+        int xs = area.getXSize();
+        int ys = area.getYSize();
+        List<BlockPos> list = new ArrayList<>();
+        BlockPos.MutableBlockPos mbpos = new BlockPos.MutableBlockPos();
+        // same x, then y, then z order as vanilla
+        boolean done = submit(source, "Fill", (long)xs*ys*area.getZSize(), (i) ->
+        {
+            mbpos.setPos(area.minX+(int)(i % xs), area.minY+(int)(i / xs % ys), area.minZ+(int)(i / xs / ys));
+            if (replacement == null || replacement.test(new BlockWorldState(world, mbpos, true)))
+            {
+                BlockStateInput block = filter.apply(mbpos);
+                if (block != null)
+                {
+                    TileEntity tileentity = world.getTileEntity(mbpos);
+                    if (tileentity instanceof IInventory)
+                    {
+                        ((IInventory)tileentity).clear();
+                    }
+                    if (block.place(world, mbpos, 2 | (CarpetSettings.fillUpdates?0:1024)))
+                    {
+                        list.add(mbpos.toImmutable());
+                    }
+                }
+            }
+            return true;
+        }, () ->
+        {
+            if (CarpetSettings.fillUpdates)
+            {
+                for (BlockPos pos : list)
+                {
+                    Block block = world.getBlockState(pos).getBlock();
+                    world.notifyNeighbors(pos, block);
+                }
+            }
+            if (list.isEmpty())
+            {
+                source.sendErrorMessage(new TextComponentTranslation("commands.fill.failed"));
+            }
+            else
+            {
+                source.sendFeedback(new TextComponentTranslation("commands.fill.success", list.size()), true);
+            }
+        });
+        return done ? list.size() : 0;
+    }
+}
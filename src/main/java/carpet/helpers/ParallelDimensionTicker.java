@@ -0,0 +1,172 @@
+package carpet.helpers;
+
+import net.minecraft.crash.CrashReport;
+import net.minecraft.crash.ReportedException;
+import net.minecraft.network.play.server.SPacketTimeUpdate;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Util;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * parallelDimensionTicking: each dimension ticks its blocks, entities and tracker on its own worker,
+ * the server thread waits for all of them before going on with network and players.
+ * Anything moving between worlds during that time is queued and done on the server thread afterwards.
+ * Carpet state shared between dimensions is guarded where it is written: hopper counters synchronize,
+ * logger messages are deferred, and spawning is serialized while spawn tracking is on.
+ * Vanilla singletons with per call state, like the canProvidePower flag of redstone dust, and the server
+ * profiler are not, which is spelled out in the rule description.
+ */
+public class ParallelDimensionTicker
+{
+    private static class DimensionThread extends Thread
+    {
+        DimensionThread(Runnable r, int id)
+        {
+            super(r, "Carpet Dimension Ticker #"+id);
+            setDaemon(true);
+        }
+    }
+
+    private static ExecutorService workers = null;
+    private static int worker_count = 0;
+    private static final Queue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+
+    public static boolean is_ticking_dimension()
+    {
+        return Thread.currentThread() instanceof DimensionThread;
+    }
+
+    /**
+     * Queues a cross dimension operation until all dimensions are done with the current tick.
+     */
+    public static void defer(Runnable task)
+    {
+        deferred.add(task);
+    }
+
+    private static ExecutorService get_workers()
+    {
+        if (workers == null)
+        {
+            workers = Executors.newCachedThreadPool(r -> new DimensionThread(r, ++worker_count));
+        }
+        return workers;
+    }
+
+    /**
+     * Replacement for the levels loop of MinecraftServer.updateTimeLightAndEntities.
+     * @param tickTimes per dimension tick times the server keeps, updated from the server thread only
+     */
+    public static void tick_worlds(MinecraftServer server, BooleanSupplier hasTimeLeft, Map<DimensionType, long[]> tickTimes, int tickCounter)
+    {
+        List<WorldServer> worlds = new ArrayList<>();
+        List<Future<Long>> results = new ArrayList<>();
+        for (WorldServer worldserver : server.getWorlds())
+        {
+            if (worldserver.dimension.getType() != DimensionType.OVERWORLD && !server.getAllowNether())
+            {
+                worlds.add(worldserver);
+                results.add(null);
+                continue;
+            }
+            sync_time(server, worldserver, tickCounter);
+            if (!TickSpeed.should_tick_dimension(worldserver.dimension.getType()))
+            {
+                worlds.add(worldserver);
+                results.add(null);
+                continue;
+            }
+            worlds.add(worldserver);
+            results.add(get_workers().submit(() -> tick_world(worldserver, hasTimeLeft)));
+        }
+        // barrier, all dimensions finish before anything else in the tick goes on
+        ReportedException failure = null;
+        for (int i = 0; i < worlds.size(); i++)
+        {
+            long time = 0L;
+            Future<Long> result = results.get(i);
+            if (result != null)
+            {
+                try
+                {
+                    time = result.get();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause() instanceof ReportedException ? (ReportedException) e.getCause() :
+                                new ReportedException(CrashReport.makeCrashReport(e.getCause(), "Exception ticking dimension in parallel"));
+                    }
+                }
+            }
+            tickTimes.computeIfAbsent(worlds.get(i).dimension.getType(), k -> new long[100])[tickCounter % 100] = time;
+        }
+        if (failure != null)
+        {
+            deferred.clear();
+            throw failure;
+        }
+        Runnable task;
+        while ((task = deferred.poll()) != null)
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Time sync of a dimension every 20 server ticks, whether it ticks this server tick or not,
+     * so slowed down dimensions get the same updates with both the serial and the parallel levels loop.
+     */
+    public static void sync_time(MinecraftServer server, WorldServer worldserver, int tickCounter)
+    {
+        if (tickCounter % 20 == 0)
+        {
+            server.getPlayerList().sendPacketToAllPlayersInDimension(new SPacketTimeUpdate(worldserver.getGameTime(), worldserver.getDayTime(),
+                    worldserver.getGameRules().getBoolean("doDaylightCycle")), worldserver.dimension.getType());
+        }
+    }
+
+    private static long tick_world(WorldServer worldserver, BooleanSupplier hasTimeLeft)
+    {
+        long start = Util.nanoTime();
+        try
+        {
+            worldserver.tick(hasTimeLeft);
+        }
+        catch (Throwable throwable)
+        {
+            CrashReport crashreport = CrashReport.makeCrashReport(throwable, "Exception ticking world");
+            worldserver.fillCrashReport(crashreport);
+            throw new ReportedException(crashreport);
+        }
+        try
+        {
+            worldserver.tickEntities();
+        }
+        catch (Throwable throwable)
+        {
+            CrashReport crashreport = CrashReport.makeCrashReport(throwable, "Exception ticking world entities");
+            worldserver.fillCrashReport(crashreport);
+            throw new ReportedException(crashreport);
+        }
+        worldserver.getEntityTracker().tick();
+        return Util.nanoTime()-start;
+    }
+}
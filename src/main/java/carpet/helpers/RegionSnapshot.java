@@ -0,0 +1,270 @@
+package carpet.helpers;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.BitArray;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.MutableBoundingBox;
+import net.minecraft.world.NextTickListEntry;
+import net.minecraft.world.ServerTickList;
+import net.minecraft.world.TickPriority;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.storage.AnvilChunkLoader;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In memory copy of a region: block states as palette indices packed in a bit array,
+ * tile entity and entity NBT, and scheduled block and fluid ticks.
+ * Restoring puts it back without block updates, so a contraption can be stepped, checked and reset repeatedly.
+ * Players are never saved nor removed, entities riding something outside of the region are not kept.
+ */
+public class RegionSnapshot
+{
+    private static final Map<String, RegionSnapshot> snapshots = new TreeMap<>();
+
+    private static class PendingTick<T>
+    {
+        final BlockPos pos;
+        final T target;
+        final int delay;
+        final TickPriority priority;
+
+        PendingTick(NextTickListEntry<T> entry, long time)
+        {
+            this.pos = entry.position.toImmutable();
+            this.target = entry.getTarget();
+            this.delay = (int)(entry.scheduledTime-time);
+            this.priority = entry.priority;
+        }
+
+        void schedule(ServerTickList<T> ticks)
+        {
+            ticks.scheduleTick(pos, target, delay, priority);
+        }
+    }
+
+    private final DimensionType dimension;
+    private final MutableBoundingBox box;
+    private final IBlockState [] palette;
+    private final BitArray states;
+    private final Map<BlockPos, NBTTagCompound> tileEntities = new HashMap<>();
+    private final List<NBTTagCompound> entities = new ArrayList<>();
+    private final List<PendingTick<Block>> blockTicks = new ArrayList<>();
+    private final List<PendingTick<Fluid>> fluidTicks = new ArrayList<>();
+
+    private RegionSnapshot(WorldServer world, MutableBoundingBox box)
+    {
+        this.dimension = world.dimension.getType();
+        this.box = box;
+        int volume = box.getXSize()*box.getYSize()*box.getZSize();
+        int [] indices = new int[volume];
+        Map<IBlockState, Integer> ids = new IdentityHashMap<>();
+        List<IBlockState> states = new ArrayList<>();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int index = 0;
+        for (int y = box.minY; y <= box.maxY; y++)
+        {
+            for (int z = box.minZ; z <= box.maxZ; z++)
+            {
+                for (int x = box.minX; x <= box.maxX; x++)
+                {
+                    pos.setPos(x, y, z);
+                    IBlockState state = world.getBlockState(pos);
+                    Integer id = ids.get(state);
+                    if (id == null)
+                    {
+                        id = states.size();
+                        ids.put(state, id);
+                        states.add(state);
+                    }
+                    indices[index++] = id;
+                    TileEntity tileentity = world.getTileEntity(pos);
+                    if (tileentity != null)
+                    {
+                        tileEntities.put(pos.toImmutable(), tileentity.write(new NBTTagCompound()));
+                    }
+                }
+            }
+        }
+        this.palette = states.toArray(new IBlockState[0]);
+        this.states = new BitArray(Math.max(1, MathHelper.log2DeepBruijn(palette.length)), volume);
+        for (int i = 0; i < volume; i++)
+        {
+            this.states.setAt(i, indices[i]);
+        }
+        for (Entity entity : world.getEntitiesWithinAABB(Entity.class, bounds(box), e -> !(e instanceof EntityPlayer) && !e.isPassenger()))
+        {
+            NBTTagCompound tag = new NBTTagCompound();
+            if (entity.writeUnlessPassenger(tag))
+            {
+                entities.add(tag);
+            }
+        }
+        long time = world.getGameTime();
+        for (NextTickListEntry<Block> entry : world.getPendingBlockTicks().getPending(box, false))
+        {
+            blockTicks.add(new PendingTick<>(entry, time));
+        }
+        for (NextTickListEntry<Fluid> entry : world.getPendingFluidTicks().getPending(box, false))
+        {
+            fluidTicks.add(new PendingTick<>(entry, time));
+        }
+    }
+
+    private static AxisAlignedBB bounds(MutableBoundingBox box)
+    {
+        return new AxisAlignedBB(box.minX, box.minY, box.minZ, box.maxX+1, box.maxY+1, box.maxZ+1);
+    }
+
+    /**
+     * Copies the region, replacing the snapshot with the same name.
+     */
+    public static RegionSnapshot save(String name, WorldServer world, MutableBoundingBox box)
+    {
+        RegionSnapshot snapshot = new RegionSnapshot(world, box);
+        snapshots.put(name, snapshot);
+        return snapshot;
+    }
+
+    public static RegionSnapshot get(String name)
+    {
+        return snapshots.get(name);
+    }
+
+    public static boolean drop(String name)
+    {
+        return snapshots.remove(name) != null;
+    }
+
+    public static Set<String> names()
+    {
+        return snapshots.keySet();
+    }
+
+    /**
+     * Puts blocks, tile entities, entities and scheduled ticks back as they were when the snapshot was taken.
+     * @return false if the region is not loaded
+     */
+    public boolean restore(MinecraftServer server)
+    {
+        WorldServer world = server.getWorld(dimension);
+        if (!world.isAreaLoaded(box))
+        {
+            return false;
+        }
+        for (Entity entity : world.getEntitiesWithinAABB(Entity.class, bounds(box), e -> !(e instanceof EntityPlayer)))
+        {
+            world.removeEntityDangerously(entity);
+        }
+        world.getPendingBlockTicks().getPending(box, true);
+        world.getPendingFluidTicks().getPending(box, true);
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int index = 0;
+        for (int y = box.minY; y <= box.maxY; y++)
+        {
+            for (int z = box.minZ; z <= box.maxZ; z++)
+            {
+                for (int x = box.minX; x <= box.maxX; x++)
+                {
+                    pos.setPos(x, y, z);
+                    IBlockState state = palette[states.getAt(index++)];
+                    if (world.getBlockState(pos) != state)
+                    {
+                        TileEntity tileentity = world.getTileEntity(pos);
+                        if (tileentity instanceof IInventory)
+                        {
+                            ((IInventory)tileentity).clear();
+                        }
+                        world.setBlockState(pos, state, 2 | 16 | 1024);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<BlockPos, NBTTagCompound> entry : tileEntities.entrySet())
+        {
+            TileEntity tileentity = world.getTileEntity(entry.getKey());
+            if (tileentity != null)
+            {
+                tileentity.read(entry.getValue().copy());
+                tileentity.markDirty();
+                IBlockState state = world.getBlockState(entry.getKey());
+                world.notifyBlockUpdate(entry.getKey(), state, state, 2);
+            }
+        }
+        for (PendingTick<Block> tick : blockTicks)
+        {
+            tick.schedule(world.getPendingBlockTicks());
+        }
+        for (PendingTick<Fluid> tick : fluidTicks)
+        {
+            tick.schedule(world.getPendingFluidTicks());
+        }
+        for (NBTTagCompound tag : entities)
+        {
+            NBTTagList position = tag.getList("Pos", 6);
+            AnvilChunkLoader.readWorldEntityPos(tag.copy(), world, position.getDouble(0), position.getDouble(1), position.getDouble(2), true);
+        }
+        return true;
+    }
+
+    public int getVolume()
+    {
+        return box.getXSize()*box.getYSize()*box.getZSize();
+    }
+
+    public int getPaletteSize()
+    {
+        return palette.length;
+    }
+
+    public int getTileEntityCount()
+    {
+        return tileEntities.size();
+    }
+
+    public int getEntityCount()
+    {
+        return entities.size();
+    }
+
+    public int getScheduledTickCount()
+    {
+        return blockTicks.size()+fluidTicks.size();
+    }
+
+    /**
+     * @return size of the packed block states, without NBT
+     */
+    public long getBlockBytes()
+    {
+        return states.getBackingLongArray().length*8L;
+    }
+
+    public DimensionType getDimension()
+    {
+        return dimension;
+    }
+
+    public MutableBoundingBox getBox()
+    {
+        return box;
+    }
+}
@@ -0,0 +1,121 @@
+package carpet.helpers;
+
+import carpet.settings.CarpetSettings;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * tickBudget: work that doesn't need to happen at an exact point of the tick waits in a spill queue,
+ * which is drained in the slack time before the next tick is due.
+ * Anything waiting longer than MAX_DELAY ticks runs regardless, so the queue can't grow forever.
+ */
+public class TickBudget
+{
+    private static final int MAX_DELAY = 20;
+
+    private static class Deferred
+    {
+        final Runnable task;
+        final int tick;
+
+        Deferred(Runnable task, int tick)
+        {
+            this.task = task;
+            this.tick = tick;
+        }
+    }
+
+    private static final Queue<Deferred> spill = new ConcurrentLinkedQueue<>();
+    private static volatile long tick_start = 0L;
+    private static volatile int current_tick = 0;
+    private static volatile boolean draining = false;
+
+    public static void start_tick(int tick)
+    {
+        current_tick = tick;
+        tick_start = System.nanoTime();
+    }
+
+    public static boolean enabled()
+    {
+        return CarpetSettings.tickBudget > 0;
+    }
+
+    /**
+     * @return true if the current tick already used up its share of the tick time
+     */
+    public static boolean over_budget()
+    {
+        if (!enabled() || draining || tick_start == 0L)
+        {
+            return false;
+        }
+        return System.nanoTime()-tick_start > TickSpeed.nspt/100L*CarpetSettings.tickBudget;
+    }
+
+    /**
+     * Moves the task to the spill queue when enabled, otherwise runs it right away.
+     */
+    public static void defer(Runnable task)
+    {
+        if (enabled())
+        {
+            spill.add(new Deferred(task, current_tick));
+        }
+        else
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Moves the task to the spill queue only if the tick is already over budget.
+     */
+    public static void defer_if_over_budget(Runnable task)
+    {
+        if (over_budget())
+        {
+            spill.add(new Deferred(task, current_tick));
+        }
+        else
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs deferred work until the deadline, plus anything that waited for too long.
+     * @param deadline System.nanoTime of the next tick, Long.MAX_VALUE to run everything
+     */
+    public static void drain(long deadline)
+    {
+        if (spill.isEmpty())
+        {
+            return;
+        }
+        draining = true;
+        try
+        {
+            Deferred deferred;
+            while ((deferred = spill.peek()) != null)
+            {
+                if (System.nanoTime() >= deadline && current_tick-deferred.tick < MAX_DELAY)
+                {
+                    break;
+                }
+                spill.poll();
+                deferred.task.run();
+            }
+        }
+        finally
+        {
+            draining = false;
+        }
+    }
+
+    public static int pending()
+    {
+        return spill.size();
+    }
+}
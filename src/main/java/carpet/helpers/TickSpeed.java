@@ -1,28 +1,65 @@
 package carpet.helpers;
 
 import carpet.CarpetServer;
+import carpet.settings.CarpetSettings;
 import carpet.utils.Messenger;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.Commands;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.text.ITextComponent;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 
 public class TickSpeed
 {
     public static final int PLAYER_GRACE = 2;
     public static float tickrate = 20.0f;
     public static long mspt = 50l;
+    public static long nspt = 50000000l;
     public static long time_bias = 0;
     public static long time_warp_start_time = 0;
     public static long time_warp_scheduled_ticks = 0;
     public static EntityPlayer time_advancerer = null;
     public static String tick_warp_callback = null;
     public static CommandSource tick_warp_sender = null;
+    // compiled scarpet condition ending the warp early, checked after every warped tick
+    public static BooleanSupplier tick_warp_condition = null;
+    private static boolean tick_warp_condition_met = false;
     public static int player_active_timeout = 0;
     public static boolean process_entities = true;
     public static boolean is_paused = false;
+    // deep freeze also stops chunk unloading, saving, lighting and player chunk loading while paused
+    public static boolean deep_freeze = false;
+    public static boolean process_chunks = true;
     public static boolean is_superHot = false;
+    // time spent on work tickWarpBatching cuts down on during the current warp
+    public static final int WARP_PLAYERS = 0;
+    public static final int WARP_AUTOSAVE = 1;
+    public static final int WARP_HUD = 2;
+    private static final long [] warp_work_time = new long[3];
+    private static final int [] warp_work_runs = new int[3];
+    private static long last_autosave = System.nanoTime();
+    private static boolean autosave_pending = false;
+    // tick scheduling, all in System.nanoTime, same clock as Util.milliTime
+    public enum CatchUp
+    {
+        SKIP, BURST, SMOOTH
+    }
+    private static final long MAX_BACKLOG = 2000000000L;
+    private static long next_tick_due = 0L;
+    private static long current_tick_start = 0L;
+    private static long last_behind_warning = 0L;
+
+    // dimensions with their own tick rate, capped by the global one, get only a share of the server ticks
+    private static final Map<DimensionType, Float> dimension_tickrates = new HashMap<>();
+    private static final Map<DimensionType, double []> dimension_credit = new HashMap<>();
 
     public static void reset_player_active_timeout()
     {
@@ -40,20 +77,84 @@ public class TickSpeed
     public static void tickrate(float rate)
     {
         tickrate = rate;
-        mspt = (long)(1000.0/tickrate);
-        if (mspt <=0)
+        nspt = (long)(1000000000.0/tickrate);
+        if (nspt <= 0)
+        {
+            nspt = 1l;
+        }
+        // whole milliseconds for everything that only needs an estimate, scheduling uses nspt
+        mspt = Math.max(nspt/1000000l, 1l);
+    }
+
+    /**
+     * @param rate ticks per second for the dimension, 0 to follow the global tick rate again
+     */
+    public static void dimension_tickrate(DimensionType dimension, float rate)
+    {
+        if (rate > 0)
         {
-            mspt = 1l;
-            tickrate = 1000.0f;
+            dimension_tickrates.put(dimension, rate);
         }
+        else
+        {
+            dimension_tickrates.remove(dimension);
+        }
+        dimension_credit.remove(dimension);
+    }
+
+    public static float dimension_tickrate(DimensionType dimension)
+    {
+        return Math.min(dimension_tickrates.getOrDefault(dimension, tickrate), tickrate);
+    }
+
+    public static Map<DimensionType, Float> dimension_tickrates()
+    {
+        return Collections.unmodifiableMap(dimension_tickrates);
+    }
+
+    /**
+     * Effective rate of a dimension when the server as a whole manages server_tps.
+     */
+    public static double dimension_tps(DimensionType dimension, double server_tps)
+    {
+        return server_tps*dimension_tickrate(dimension)/tickrate;
+    }
+
+    /**
+     * Called once per dimension in each server tick, spreads the ticks of slower dimensions evenly between server ticks.
+     */
+    public static boolean should_tick_dimension(DimensionType dimension)
+    {
+        Float rate = dimension_tickrates.get(dimension);
+        if (rate == null || rate >= tickrate)
+        {
+            return true;
+        }
+        double [] credit = dimension_credit.computeIfAbsent(dimension, k -> new double[1]);
+        credit[0] += rate/tickrate;
+        if (credit[0] >= 1.0D)
+        {
+            credit[0] -= 1.0D;
+            return true;
+        }
+        return false;
     }
 
     public static ITextComponent tickrate_advance(EntityPlayer player, int advance, String callback, CommandSource source)
+    {
+        return tickrate_advance(player, advance, callback, source, null);
+    }
+
+    /**
+     * @param condition stops the warp before reaching advance ticks as soon as it returns true, null to always run them all
+     */
+    public static ITextComponent tickrate_advance(EntityPlayer player, int advance, String callback, CommandSource source, BooleanSupplier condition)
     {
         if (0 == advance)
         {
             tick_warp_callback = null;
             tick_warp_sender = null;
+            tick_warp_condition = null;
             finish_time_warp();
             return Messenger.c("gi Warp interrupted");
         }
@@ -62,11 +163,15 @@ public class TickSpeed
             return Messenger.c("l Another player is already advancing time at the moment. Try later or talk to them");
         }
         time_advancerer = player;
+        Arrays.fill(warp_work_time, 0L);
+        Arrays.fill(warp_work_runs, 0);
         time_warp_start_time = System.nanoTime();
         time_warp_scheduled_ticks = advance;
         time_bias = advance;
         tick_warp_callback = callback;
         tick_warp_sender = source;
+        tick_warp_condition = condition;
+        tick_warp_condition_met = false;
         return Messenger.c("gi Warp speed ....");
     }
 
@@ -82,6 +187,14 @@ public class TickSpeed
         milis_to_complete /= 1000000.0;
         int tps = (int) (1000.0D*completed_ticks/milis_to_complete);
         double mspt = (1.0*milis_to_complete)/completed_ticks;
+        String breakdown = warp_breakdown(completed_ticks);
+        String outcome = "... Time warp completed";
+        if (tick_warp_condition != null)
+        {
+            outcome = String.format(tick_warp_condition_met ? "... Condition met after %d ticks, time warp completed" :
+                    "... Condition not met in %d ticks, time warp completed", completed_ticks);
+            tick_warp_condition = null;
+        }
         time_warp_scheduled_ticks = 0;
         time_warp_start_time = 0;
         if (tick_warp_callback != null)
@@ -111,12 +224,14 @@ public class TickSpeed
         }
         if (time_advancerer != null)
         {
-            Messenger.m(time_advancerer, String.format("gi ... Time warp completed with %d tps, or %.2f mspt",tps, mspt ));
+            Messenger.m(time_advancerer, String.format("gi %s with %d tps, or %.2f mspt", outcome, tps, mspt ));
+            Messenger.m(time_advancerer, "gi "+breakdown);
             time_advancerer = null;
         }
         else
         {
-            Messenger.print_server_message(CarpetServer.minecraft_server, String.format("... Time warp completed with %d tps, or %.2f mspt",tps, mspt ));
+            Messenger.print_server_message(CarpetServer.minecraft_server, String.format("%s with %d tps, or %.2f mspt", outcome, tps, mspt ));
+            Messenger.print_server_message(CarpetServer.minecraft_server, breakdown);
         }
         time_bias = 0;
 
@@ -124,11 +239,21 @@ public class TickSpeed
 
     public static boolean continueWarp()
     {
+        // checked after every warped tick, the last one included
+        if (time_bias < time_warp_scheduled_ticks && tick_warp_condition != null && warp_condition_met())
+        {
+            tick_warp_condition_met = true;
+            // only the ticks that actually ran count towards the summary
+            time_warp_scheduled_ticks -= time_bias;
+            time_bias = 0;
+        }
         if (time_bias > 0)
         {
             if (time_bias == time_warp_scheduled_ticks) //first call after previous tick, adjust start time
             {
                 time_warp_start_time = System.nanoTime();
+                Arrays.fill(warp_work_time, 0L);
+                Arrays.fill(warp_work_runs, 0);
             }
             time_bias -= 1;
             return true;
@@ -140,9 +265,167 @@ public class TickSpeed
         }
     }
 
+    private static boolean warp_condition_met()
+    {
+        try
+        {
+            return tick_warp_condition.getAsBoolean();
+        }
+        catch (RuntimeException e)
+        {
+            String message = "Warp condition failed, stopping: "+e.getMessage();
+            if (time_advancerer != null)
+            {
+                Messenger.m(time_advancerer, "r "+message);
+            }
+            else
+            {
+                Messenger.print_server_message(CarpetServer.minecraft_server, message);
+            }
+            tick_warp_condition = null;
+            return true;
+        }
+    }
+
+    private static String warp_breakdown(long completed_ticks)
+    {
+        double divider = 1.0D/Math.max(completed_ticks, 1L)/1000000;
+        String breakdown = String.format("Player list %.3f mspt (%d runs), Autosave %.3f mspt (%d runs), HUD %.3f mspt",
+                divider*warp_work_time[WARP_PLAYERS], warp_work_runs[WARP_PLAYERS],
+                divider*warp_work_time[WARP_AUTOSAVE], warp_work_runs[WARP_AUTOSAVE],
+                divider*warp_work_time[WARP_HUD]);
+        if (CarpetSettings.tickWarpBatching > 1)
+        {
+            breakdown += ", batched every "+CarpetSettings.tickWarpBatching+" ticks";
+        }
+        return breakdown;
+    }
+
+    /**
+     * With tickWarpBatching, player list and HUD work only runs on every N-th tick while warping.
+     * Connections still tick every tick, or keep alives and incoming packets would queue up.
+     */
+    public static boolean skip_warp_work(int tickCounter)
+    {
+        return time_warp_start_time != 0 && CarpetSettings.tickWarpBatching > 1 && tickCounter % CarpetSettings.tickWarpBatching != 0;
+    }
+
+    /**
+     * Regular autosave every 900 ticks. When batching a warp these come way too often,
+     * so they are held back to at most one per 45 seconds of real time and one after the warp.
+     * In deep freeze saves wait until the game runs again.
+     */
+    public static boolean autosave_due(int tickCounter)
+    {
+        boolean due = tickCounter % 900 == 0;
+        if (!process_chunks)
+        {
+            autosave_pending |= due;
+            return false;
+        }
+        if (time_warp_start_time != 0 && CarpetSettings.tickWarpBatching > 1)
+        {
+            if (due && System.nanoTime()-last_autosave < 45000000000L)
+            {
+                autosave_pending = true;
+                due = false;
+            }
+        }
+        else if (autosave_pending)
+        {
+            due = true;
+        }
+        if (due)
+        {
+            autosave_pending = false;
+            last_autosave = System.nanoTime();
+        }
+        return due;
+    }
+
+    public static long warp_work_start()
+    {
+        return time_warp_start_time != 0 ? System.nanoTime() : 0L;
+    }
+
+    public static void warp_work_end(int kind, long start)
+    {
+        if (start != 0L && time_warp_start_time != 0)
+        {
+            warp_work_time[kind] += System.nanoTime()-start;
+            warp_work_runs[kind]++;
+        }
+    }
+
+    public static void reset_schedule()
+    {
+        next_tick_due = System.nanoTime();
+    }
+
+    /**
+     * Applies tickCatchUp before a regular tick.
+     * @return due time of the tick about to run, in milliseconds
+     */
+    public static long begin_scheduled_tick()
+    {
+        long now = System.nanoTime();
+        if (next_tick_due == 0L)
+        {
+            next_tick_due = now;
+        }
+        long behind = now-next_tick_due;
+        if (behind > MAX_BACKLOG)
+        {
+            if (now-last_behind_warning >= 15000000000L)
+            {
+                CarpetSettings.LOG.warn("Can't keep up! Is the server overloaded? Running {}ms or {} ticks behind", behind/1000000l, behind/nspt);
+                last_behind_warning = now;
+            }
+            next_tick_due = now;
+        }
+        else if (behind > nspt && CarpetSettings.tickCatchUp == CatchUp.SKIP)
+        {
+            next_tick_due = now;
+        }
+        current_tick_start = now;
+        return next_tick_due/1000000l;
+    }
+
+    /**
+     * @return due time of the next tick, in milliseconds
+     */
+    public static long end_scheduled_tick()
+    {
+        next_tick_due += nspt;
+        return next_tick_due/1000000l;
+    }
+
+    /**
+     * Parks the server thread until the next tick is due. Burst runs late ticks back to back,
+     * smooth still leaves at least half a tick between them, so it catches up at up to twice the rate.
+     */
+    public static void wait_for_next_tick()
+    {
+        long target = next_tick_due;
+        if (CarpetSettings.tickCatchUp == CatchUp.SMOOTH)
+        {
+            target = Math.max(target, current_tick_start+nspt/2);
+        }
+        TickBudget.drain(target);
+        for (long remaining = target-System.nanoTime(); remaining > 0; remaining = target-System.nanoTime())
+        {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted())
+            {
+                return;
+            }
+        }
+    }
+
     public static void tick(MinecraftServer server)
     {
         process_entities = true;
+        process_chunks = true;
         if (player_active_timeout > 0)
         {
             player_active_timeout--;
@@ -152,6 +435,7 @@ public class TickSpeed
             if (player_active_timeout < PLAYER_GRACE)
             {
                 process_entities = false;
+                process_chunks = !deep_freeze;
             }
         }
         else if (is_superHot)
@@ -1,6 +1,8 @@
 package carpet.logging;
 
 import carpet.CarpetServer;
+import carpet.helpers.ParallelDimensionTicker;
+import carpet.helpers.TickBudget;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.text.ITextComponent;
 
@@ -92,6 +94,17 @@ public class Logger
     public interface lMessage { ITextComponent [] get(String playerOption, EntityPlayer player);}
     public void log(lMessage messagePromise)
     {
+        if (ParallelDimensionTicker.is_ticking_dimension())
+        {
+            // player lookups and messages belong to the server thread, after all dimensions are done
+            ParallelDimensionTicker.defer(() -> log(messagePromise));
+            return;
+        }
+        if (TickBudget.over_budget())
+        {
+            TickBudget.defer(() -> log(messagePromise));
+            return;
+        }
         for (Map.Entry<String,String> en : subscribedOnlinePlayers.entrySet())
         {
             EntityPlayer player = playerFromName(en.getKey());
@@ -112,6 +125,17 @@ public class Logger
     public interface lMessageIgnorePlayer { ITextComponent [] get(String playerOption);}
     public void log(lMessageIgnorePlayer messagePromise)
     {
+        if (ParallelDimensionTicker.is_ticking_dimension())
+        {
+            // player lookups and messages belong to the server thread, after all dimensions are done
+            ParallelDimensionTicker.defer(() -> log(messagePromise));
+            return;
+        }
+        if (TickBudget.over_budget())
+        {
+            TickBudget.defer(() -> log(messagePromise));
+            return;
+        }
         Map<String, ITextComponent[]> cannedMessages = new HashMap<>();
         for (Map.Entry<String,String> en : subscribedOnlinePlayers.entrySet())
         {
@@ -134,6 +158,17 @@ public class Logger
      */
     public void log(Supplier<ITextComponent[]> messagePromise)
     {
+        if (ParallelDimensionTicker.is_ticking_dimension())
+        {
+            // player lookups and messages belong to the server thread, after all dimensions are done
+            ParallelDimensionTicker.defer(() -> log(messagePromise));
+            return;
+        }
+        if (TickBudget.over_budget())
+        {
+            TickBudget.defer(() -> log(messagePromise));
+            return;
+        }
         ITextComponent [] cannedMessages = null;
         for (Map.Entry<String,String> en : subscribedOnlinePlayers.entrySet())
         {
@@ -39,7 +39,7 @@ public class LoggerRegistry
         registerLogger("weather", new Logger("weather", null, null));
         registerLogger( "pathfinding", new Logger("pathfinding", "20", new String[]{"2", "5", "10"}));
 
-        registerLogger("tps", new HUDLogger("tps", null, null));
+        registerLogger("tps", new HUDLogger("tps", "average", new String[]{"average", "5", "30", "60"}));
         registerLogger("packets", new HUDLogger("packets", null, null));
         registerLogger("counter",new HUDLogger("counter","white", Arrays.stream(EnumDyeColor.values()).map(Object::toString).toArray(String[]::new)));
         registerLogger("mobcaps", new HUDLogger("mobcaps", "dynamic",new String[]{"dynamic", "overworld", "nether","end"}));
@@ -0,0 +1,151 @@
+package carpet.logging.logHelpers;
+
+import carpet.helpers.TickSpeed;
+
+/**
+ * Sliding window statistics of tick times for the tps logger.
+ * Every tick adds one sample and drops the one leaving the window, percentiles come from 0.1ms buckets.
+ * Windows are counted in ticks at the regular 20 tps.
+ */
+public class TickTimeHistogram
+{
+    public static final int [] WINDOWS = {5, 30, 60};
+    private static final int RING_SIZE = 60*20;
+    private static final int BUCKETS = 2000;
+    private static final long BUCKET_NANOS = 100000L;
+
+    private static final long [] times = new long[RING_SIZE];
+    private static final boolean [] over_budget = new boolean[RING_SIZE];
+    private static int position = 0;
+    private static final TickTimeHistogram [] windows = new TickTimeHistogram[WINDOWS.length];
+    static
+    {
+        for (int i = 0; i < WINDOWS.length; i++)
+        {
+            windows[i] = new TickTimeHistogram(WINDOWS[i]*20);
+        }
+    }
+
+    private final int length;
+    private final int [] buckets = new int[BUCKETS];
+    private int size = 0;
+    private int over = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0L;
+
+    private TickTimeHistogram(int length)
+    {
+        this.length = length;
+    }
+
+    private static int bucket(long time)
+    {
+        return (int)Math.min(time/BUCKET_NANOS, BUCKETS-1);
+    }
+
+    public static void record(long time)
+    {
+        boolean over = time > TickSpeed.nspt;
+        for (TickTimeHistogram window : windows)
+        {
+            window.add(time, over);
+        }
+        times[position] = time;
+        over_budget[position] = over;
+        position = (position+1) % RING_SIZE;
+    }
+
+    private void add(long time, boolean over_budget_now)
+    {
+        // the ring is not advanced yet, so the sample leaving this window is still there
+        if (size == length)
+        {
+            int oldest = (position-length+RING_SIZE) % RING_SIZE;
+            long dropped = times[oldest];
+            buckets[bucket(dropped)]--;
+            if (over_budget[oldest])
+            {
+                over--;
+            }
+            size--;
+            if (dropped == min || dropped == max)
+            {
+                rescan(oldest);
+            }
+        }
+        buckets[bucket(time)]++;
+        if (over_budget_now)
+        {
+            over++;
+        }
+        size++;
+        min = Math.min(min, time);
+        max = Math.max(max, time);
+    }
+
+    // exact extremes of the samples left in the window, only needed when one of them leaves
+    private void rescan(int dropped)
+    {
+        min = Long.MAX_VALUE;
+        max = 0L;
+        for (int i = 1; i <= size; i++)
+        {
+            long time = times[(dropped+i) % RING_SIZE];
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+    }
+
+    private long percentile(double fraction)
+    {
+        int rank = Math.max((int)Math.ceil(fraction*size), 1);
+        int seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += buckets[i];
+            if (seen >= rank)
+            {
+                // upper bound of the bucket, but never beyond the exact extremes
+                return Math.max(Math.min((i+1)*BUCKET_NANOS, max), min);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the window used for the requested number of seconds, the closest larger one or the largest one
+     */
+    public static int window(int seconds)
+    {
+        for (int window : WINDOWS)
+        {
+            if (window >= seconds)
+            {
+                return window;
+            }
+        }
+        return WINDOWS[WINDOWS.length-1];
+    }
+
+    /**
+     * @return min, p50, p95 and max tick time in nanoseconds and the number of ticks over the tick time
+     * in the window for the requested seconds, null if there were no ticks yet
+     */
+    public static long [] stats(int seconds)
+    {
+        int seconds_in_window = window(seconds);
+        TickTimeHistogram window = windows[windows.length-1];
+        for (int i = 0; i < WINDOWS.length; i++)
+        {
+            if (WINDOWS[i] == seconds_in_window)
+            {
+                window = windows[i];
+            }
+        }
+        if (window.size == 0)
+        {
+            return null;
+        }
+        return new long[]{window.min, window.percentile(0.5), window.percentile(0.95), window.max, window.over};
+    }
+}
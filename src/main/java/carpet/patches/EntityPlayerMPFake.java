@@ -1,5 +1,6 @@
 package carpet.patches;
 
+import carpet.helpers.ParallelDimensionTicker;
  import net.minecraft.entity.Entity;
  import net.minecraft.network.play.server.SPacketEntityHeadLook;
  import net.minecraft.network.play.server.SPacketEntityTeleport;
@@ -123,6 +124,11 @@ public class EntityPlayerMPFake extends EntityPlayerMP
     @Override
     public Entity changeDimension(DimensionType p_212321_1_)
     {
+        if (ParallelDimensionTicker.is_ticking_dimension())
+        {
+            ParallelDimensionTicker.defer(() -> this.changeDimension(p_212321_1_));
+            return null;
+        }
         Entity res = super.changeDimension(p_212321_1_);
         this.getServer().addScheduledTask( () -> clearInvulnerableDimensionChange());
         return res;
@@ -1,11 +1,13 @@
 package carpet.script;
 
 import carpet.CarpetServer;
+import carpet.helpers.TickBudget;
 import carpet.script.value.BlockValue;
 import carpet.script.value.EntityValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
+import carpet.utils.CarpetProfiler;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.command.CommandSource;
 import net.minecraft.entity.Entity;
@@ -71,7 +73,9 @@ public class CarpetEventServer
 
         public void execute()
         {
+            long start = System.nanoTime();
             CarpetServer.scriptServer.runas(context_origin, context_source, host, udf, args);
+            CarpetProfiler.record_scarpet_call(host, "scheduled", System.nanoTime()-start);
         }
     }
 
@@ -79,11 +83,13 @@ public class CarpetEventServer
     {
 
         public List<Callback> callList;
+        public String event;
         public int reqArgs;
 
-        public CallbackList(int reqArgs)
+        public CallbackList(String event, int reqArgs)
         {
             this.callList = new ArrayList<>();
+            this.event = event;
             this.reqArgs = reqArgs;
         }
 
@@ -94,7 +100,13 @@ public class CarpetEventServer
                 List<LazyValue> argv = argumentSupplier.get(); // empty for onTickDone
                 CommandSource source = cmdSourceSupplier.get();
                 assert argv.size() == reqArgs;
-                callList.removeIf(call -> !CarpetServer.scriptServer.runas(source, call.host, call.udf, argv)); // this actually does the calls
+                callList.removeIf(call ->
+                {
+                    long start = System.nanoTime();
+                    boolean success = CarpetServer.scriptServer.runas(source, call.host, call.udf, argv); // this actually does the calls
+                    CarpetProfiler.record_scarpet_call(call.host, event, System.nanoTime()-start);
+                    return !success;
+                });
             }
         }
         public boolean addEventCall(String hostName, String funName)
@@ -143,7 +155,7 @@ public class CarpetEventServer
         }
         for (ScheduledCall call: currentCalls)
         {
-            call.execute();
+            TickBudget.defer_if_over_budget(call::execute);
         }
 
     }
@@ -155,23 +167,23 @@ public class CarpetEventServer
 
     public CarpetEventServer()
     {
-        eventHandlers.put("tick",new CallbackList(0));
-        eventHandlers.put("tick_nether",new CallbackList(0));
-        eventHandlers.put("tick_ender",new CallbackList(0));
-        eventHandlers.put("player_jumps",new CallbackList(1));
-        eventHandlers.put("player_deploys_elytra",new CallbackList(1));
-        eventHandlers.put("player_wakes_up",new CallbackList(1));
-        eventHandlers.put("player_rides",new CallbackList(5));
-        eventHandlers.put("player_uses_item",new CallbackList(3));
-        eventHandlers.put("player_clicks_block",new CallbackList(3));
-        eventHandlers.put("player_right_clicks_block",new CallbackList(6));
-        eventHandlers.put("player_breaks_block",new CallbackList(2));
-        eventHandlers.put("player_interacts_with_entity",new CallbackList(3));
-        eventHandlers.put("player_attacks_entity",new CallbackList(2));
-        eventHandlers.put("player_starts_sneaking",new CallbackList(1));
-        eventHandlers.put("player_stops_sneaking",new CallbackList(1));
-        eventHandlers.put("player_starts_sprinting",new CallbackList(1));
-        eventHandlers.put("player_stops_sprinting",new CallbackList(1));
+        eventHandlers.put("tick",new CallbackList("tick",0));
+        eventHandlers.put("tick_nether",new CallbackList("tick_nether",0));
+        eventHandlers.put("tick_ender",new CallbackList("tick_ender",0));
+        eventHandlers.put("player_jumps",new CallbackList("player_jumps",1));
+        eventHandlers.put("player_deploys_elytra",new CallbackList("player_deploys_elytra",1));
+        eventHandlers.put("player_wakes_up",new CallbackList("player_wakes_up",1));
+        eventHandlers.put("player_rides",new CallbackList("player_rides",5));
+        eventHandlers.put("player_uses_item",new CallbackList("player_uses_item",3));
+        eventHandlers.put("player_clicks_block",new CallbackList("player_clicks_block",3));
+        eventHandlers.put("player_right_clicks_block",new CallbackList("player_right_clicks_block",6));
+        eventHandlers.put("player_breaks_block",new CallbackList("player_breaks_block",2));
+        eventHandlers.put("player_interacts_with_entity",new CallbackList("player_interacts_with_entity",3));
+        eventHandlers.put("player_attacks_entity",new CallbackList("player_attacks_entity",2));
+        eventHandlers.put("player_starts_sneaking",new CallbackList("player_starts_sneaking",1));
+        eventHandlers.put("player_stops_sneaking",new CallbackList("player_stops_sneaking",1));
+        eventHandlers.put("player_starts_sprinting",new CallbackList("player_starts_sprinting",1));
+        eventHandlers.put("player_stops_sprinting",new CallbackList("player_stops_sprinting",1));
     }
 
     public boolean addEvent(String event, String host, String funName)
@@ -2,6 +2,7 @@ package carpet.script;
 
 import carpet.CarpetServer;
 import carpet.helpers.FeatureGenerator;
+import carpet.helpers.RegionSnapshot;
 import carpet.script.exception.CarpetExpressionException;
 import carpet.script.exception.ExpressionException;
 import carpet.script.exception.InternalExpressionException;
@@ -48,6 +49,7 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.math.Rotations;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.registry.IRegistry;
@@ -68,6 +70,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -1680,26 +1683,26 @@ public class CarpetExpression
             }
 
             //saving outer scope
-            LazyValue _x = c.getVariable("_x");
-            LazyValue _y = c.getVariable("_y");
-            LazyValue _z = c.getVariable("_z");
-            LazyValue __ = c.getVariable("_");
+            LazyValue _x = c.getVariable(Context.SLOT_X, "_x");
+            LazyValue _y = c.getVariable(Context.SLOT_Y, "_y");
+            LazyValue _z = c.getVariable(Context.SLOT_Z, "_z");
+            LazyValue __ = c.getVariable(Context.SLOT_VALUE, "_");
             int sCount = 0;
             for (int y=cy-yrange; y <= cy+yprange; y++)
             {
                 int yFinal = y;
-                c.setVariable("_y", (c_, t_) -> new NumericValue(yFinal).bindTo("_y"));
+                c.setVariable(Context.SLOT_Y, "_y", (c_, t_) -> new NumericValue(yFinal).bindTo("_y"));
                 for (int x=cx-xrange; x <= cx+xprange; x++)
                 {
                     int xFinal = x;
-                    c.setVariable("_x", (c_, t_) -> new NumericValue(xFinal).bindTo("_x"));
+                    c.setVariable(Context.SLOT_X, "_x", (c_, t_) -> new NumericValue(xFinal).bindTo("_x"));
                     for (int z=cz-zrange; z <= cz+zprange; z++)
                     {
                         int zFinal = z;
 
-                        c.setVariable("_z", (c_, t_) -> new NumericValue(zFinal).bindTo("_z"));
+                        c.setVariable(Context.SLOT_Z, "_z", (c_, t_) -> new NumericValue(zFinal).bindTo("_z"));
                         Value blockValue = BlockValue.fromCoords(((CarpetContext)c), xFinal,yFinal,zFinal).bindTo("_");
-                        c.setVariable( "_", (cc_, t_c) -> blockValue);
+                        c.setVariable(Context.SLOT_VALUE, "_", (cc_, t_c) -> blockValue);
                         if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
                         {
                             sCount += 1;
@@ -1708,10 +1711,10 @@ public class CarpetExpression
                 }
             }
             //restoring outer scope
-            c.setVariable("_x", _x);
-            c.setVariable("_y", _y);
-            c.setVariable("_z", _z);
-            c.setVariable("_", __);
+            c.setVariable(Context.SLOT_X, "_x", _x);
+            c.setVariable(Context.SLOT_Y, "_y", _y);
+            c.setVariable(Context.SLOT_Z, "_z", _z);
+            c.setVariable(Context.SLOT_VALUE, "_", __);
             int finalSCount = sCount;
             return (c_, t_) -> new NumericValue(finalSCount);
         });
@@ -1733,25 +1736,25 @@ public class CarpetExpression
             LazyValue expr = lv.get(6);
 
             //saving outer scope
-            LazyValue _x = c.getVariable("_x");
-            LazyValue _y = c.getVariable("_y");
-            LazyValue _z = c.getVariable("_z");
-            LazyValue __ = c.getVariable("_");
+            LazyValue _x = c.getVariable(Context.SLOT_X, "_x");
+            LazyValue _y = c.getVariable(Context.SLOT_Y, "_y");
+            LazyValue _z = c.getVariable(Context.SLOT_Z, "_z");
+            LazyValue __ = c.getVariable(Context.SLOT_VALUE, "_");
             int sCount = 0;
             for (int y=miny; y <= maxy; y++)
             {
                 int yFinal = y;
-                c.setVariable("_y", (c_, t_) -> new NumericValue(yFinal).bindTo("_y"));
+                c.setVariable(Context.SLOT_Y, "_y", (c_, t_) -> new NumericValue(yFinal).bindTo("_y"));
                 for (int x=minx; x <= maxx; x++)
                 {
                     int xFinal = x;
-                    c.setVariable("_x", (c_, t_) -> new NumericValue(xFinal).bindTo("_x"));
+                    c.setVariable(Context.SLOT_X, "_x", (c_, t_) -> new NumericValue(xFinal).bindTo("_x"));
                     for (int z=minz; z <= maxz; z++)
                     {
                         int zFinal = z;
-                        c.setVariable("_z", (c_, t_) -> new NumericValue(zFinal).bindTo("_z"));
+                        c.setVariable(Context.SLOT_Z, "_z", (c_, t_) -> new NumericValue(zFinal).bindTo("_z"));
                         Value blockValue = BlockValue.fromCoords(((CarpetContext)c), xFinal,yFinal,zFinal).bindTo("_");
-                        c.setVariable( "_", (cc_, t_c) -> blockValue);
+                        c.setVariable(Context.SLOT_VALUE, "_", (cc_, t_c) -> blockValue);
                         if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
                         {
                             sCount += 1;
@@ -1760,10 +1763,10 @@ public class CarpetExpression
                 }
             }
             //restoring outer scope
-            c.setVariable("_x", _x);
-            c.setVariable("_y", _y);
-            c.setVariable("_z", _z);
-            c.setVariable("_", __);
+            c.setVariable(Context.SLOT_X, "_x", _x);
+            c.setVariable(Context.SLOT_Y, "_y", _y);
+            c.setVariable(Context.SLOT_Z, "_z", _z);
+            c.setVariable(Context.SLOT_VALUE, "_", __);
             int finalSCount = sCount;
             return (c_, t_) -> new NumericValue(finalSCount);
         });
@@ -2066,6 +2069,17 @@ public class CarpetExpression
      * <h3><code>schedule(delay, function, args...)</code></h3>
      * <p>Schedules a user defined function to run with a specified <code>delay</code> ticks of delay.
      * Scheduled functions run at the end of the tick, and they will run in order they were scheduled.</p>
+     * <h3><code>snapshot(name, from, to), restore_snapshot(name), drop_snapshot(name)</code></h3>
+     * <p>Keeps an in-memory copy of the blocks, tile entities, non-player entities and scheduled ticks between
+     * positions <code>from</code> and <code>to</code> under <code>name</code>, the same snapshots as in
+     * <code>/tick snapshot</code>. <code>snapshot</code> returns the number of blocks saved,
+     * <code>restore_snapshot</code> puts the region back without causing block updates and returns <code>false</code>
+     * if there is no such snapshot or the region is not loaded. Together with <code>game_tick()</code> it lets a
+     * test run a contraption for a few ticks, check the outcome and start over from the same state.</p>
+     * <pre>
+     * snapshot('clock', 0, 60, 0, 16, 70, 16);
+     * loop(100, game_tick()); check_output(); restore_snapshot('clock')
+     * </pre>
      * <h3><code>plop(pos, what)</code></h3>
      * <p>Plops a structure or a feature at a given <code>pos</code>, so block, triple position coordinates
      * or a list of coordinates. To <code>what</code> gets plopped and exactly where it often depends on the
@@ -2464,6 +2478,35 @@ public class CarpetExpression
             CarpetServer.scriptServer.events.scheduleCall(cc, funname, args, delay);
             return (c_, t_) -> Value.TRUE;
         });
+
+        this.expr.addLazyFunction("snapshot", -1, (c, t, lv) -> {
+            CarpetContext cc = (CarpetContext)c;
+            if (lv.size() < 3)
+                throw new InternalExpressionException("snapshot requires a name and two positions");
+            String name = lv.get(0).evalValue(c).getString();
+            BlockValue.LocatorResult from = BlockValue.fromParams(cc, lv, 1);
+            BlockValue.LocatorResult to = BlockValue.fromParams(cc, lv, from.offset);
+            MutableBoundingBox area = new MutableBoundingBox(from.block.getPos(), to.block.getPos());
+            int volume = area.getXSize()*area.getYSize()*area.getZSize();
+            if (volume > CarpetSettings.fillLimit)
+                throw new InternalExpressionException("too many blocks to save: "+volume);
+            if (!cc.s.getWorld().isAreaLoaded(area))
+                throw new InternalExpressionException("snapshot region is not loaded");
+            RegionSnapshot.save(name, cc.s.getWorld(), area);
+            Value retval = new NumericValue(volume);
+            return (c_, t_) -> retval;
+        });
+
+        this.expr.addLazyFunction("restore_snapshot", 1, (c, t, lv) -> {
+            RegionSnapshot snapshot = RegionSnapshot.get(lv.get(0).evalValue(c).getString());
+            boolean restored = snapshot != null && snapshot.restore(((CarpetContext)c).s.getServer());
+            return (c_, t_) -> new NumericValue(restored);
+        });
+
+        this.expr.addLazyFunction("drop_snapshot", 1, (c, t, lv) -> {
+            boolean dropped = RegionSnapshot.drop(lv.get(0).evalValue(c).getString());
+            return (c_, t_) -> new NumericValue(dropped);
+        });
     }
 
     /**
@@ -2473,10 +2516,44 @@ public class CarpetExpression
      * @param origin origin
      */
     public CarpetExpression(String expression, CommandSource source, BlockPos origin)
+    {
+        this(new Expression(expression, builtIns()), source, origin);
+    }
+
+    private CarpetExpression(Expression expr, CommandSource source, BlockPos origin)
     {
         this.origin = origin;
         this.source = source;
-        this.expr = new Expression(expression);
+        this.expr = expr;
+    }
+
+    /**
+     * Same as the constructor, but reuses the parsed code if the host ran the same code recently.
+     * @param host host
+     * @param expression expression
+     * @param source source
+     * @param origin origin
+     * @return .
+     */
+    public static CarpetExpression cached(ScriptHost host, String expression, CommandSource source, BlockPos origin)
+    {
+        return new CarpetExpression(ParsedScriptCache.get(host, expression, builtIns()), source, origin);
+    }
+
+    /** scarpet built-ins with the API on top, registered once for all expressions on first use */
+    private static class BuiltIns
+    {
+        static final Expression INSTANCE = new CarpetExpression().expr.freeze();
+    }
+
+    private static Expression builtIns()
+    {
+        return BuiltIns.INSTANCE;
+    }
+
+    private CarpetExpression()
+    {
+        this.expr = Expression.newBuiltIns();
 
         API_BlockManipulation();
         API_EntityManipulation();
@@ -2534,7 +2611,7 @@ public class CarpetExpression
             return false;
         try
         {
-            Context context = new CarpetContext(host, source, origin).
+            Context context = new CarpetContext(host, source, origin).bind(expr.compiledSlots()).
                     with("x", (c, t) -> new NumericValue(x - origin.getX()).bindTo("x")).
                     with("y", (c, t) -> new NumericValue(y - origin.getY()).bindTo("y")).
                     with("z", (c, t) -> new NumericValue(z - origin.getZ()).bindTo("z")).
@@ -2582,7 +2659,7 @@ public class CarpetExpression
             return "SCRIPTING PAUSED";
         try
         {
-            Context context = new CarpetContext(host, source, origin).
+            Context context = new CarpetContext(host, source, origin).bind(expr.compiledSlots()).
                     with("x", (c, t) -> new NumericValue(pos.getX() - origin.getX()).bindTo("x")).
                     with("y", (c, t) -> new NumericValue(pos.getY() - origin.getY()).bindTo("y")).
                     with("z", (c, t) -> new NumericValue(pos.getZ() - origin.getZ()).bindTo("z"));
@@ -2609,6 +2686,58 @@ public class CarpetExpression
         }
     }
 
+    /**
+     * <h1><code>/tick warp until</code> command</h1>
+     * <div style="padding-left: 20px; border-radius: 5px 45px; border:1px solid grey;">
+     * <p>Warps the game for at most the given number of ticks, but stops as soon as the expression returns a
+     * positive result. The expression is parsed once and evaluated after every warped tick in the same context,
+     * with the same <code>x</code>, <code>y</code>, <code>z</code> and <code>p</code> variables as
+     * <code>/script run</code>, so keep it light and local variables set by it carry over between ticks.</p>
+     * <pre>
+     * /tick warp until 720000 block(100, 64, 100) == 'redstone_block'
+     * /tick warp until 720000 inventory_get(block(10, 60, 10), 0):1 &gt;= 64
+     * </pre>
+     * </div>
+     * @param host .
+     * @param pos .
+     * @return .
+     */
+    public BooleanSupplier warpCondition(ScriptHost host, BlockPos pos)
+    {
+        Context context = new CarpetContext(host, source, origin).bind(expr.compiledSlots()).
+                with("x", (c, t) -> new NumericValue(pos.getX() - origin.getX()).bindTo("x")).
+                with("y", (c, t) -> new NumericValue(pos.getY() - origin.getY()).bindTo("y")).
+                with("z", (c, t) -> new NumericValue(pos.getZ() - origin.getZ()).bindTo("z"));
+        Entity e = source.getEntity();
+        if (e==null)
+        {
+            Value nullPlayer = Value.NULL.reboundedTo("p");
+            context.with("p", (cc, tt) -> nullPlayer );
+        }
+        else
+        {
+            Value playerValue = new EntityValue(e).bindTo("p");
+            context.with("p", (cc, tt) -> playerValue);
+        }
+        return () ->
+        {
+            if (CarpetServer.scriptServer.stopAll)
+                return true;
+            try
+            {
+                return this.expr.eval(context).getBoolean();
+            }
+            catch (ExpressionException exc)
+            {
+                throw new CarpetExpressionException(exc.getMessage());
+            }
+            catch (ArithmeticException ae)
+            {
+                throw new CarpetExpressionException("math doesn't compute... "+ae.getMessage());
+            }
+        };
+    }
+
     /**
      * <h1><code>/script invoke / invokepoint / invokearea</code>, <code>/script globals</code> commands</h1>
      * <div style="padding-left: 20px; border-radius: 5px 45px; border:1px solid grey;">
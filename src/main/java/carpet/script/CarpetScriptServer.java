@@ -125,6 +125,7 @@ public class CarpetScriptServer
     public boolean addScriptHost(CommandSource source, String name)
     {
         name = name.toLowerCase(Locale.ROOT);
+        ParsedScriptCache.invalidate(name);
         ScriptHost newHost = createMinecraftScriptHost(name);
         ModuleInterface module = getModule(name);
         if (module == null)
@@ -305,6 +306,7 @@ public class CarpetScriptServer
         }
         // stop all events associated with name
         modules.remove(name);
+        ParsedScriptCache.invalidate(name);
         CarpetServer.settingsManager.notifyPlayersCommandsChanged();
         Messenger.m(source, "w Removed host "+name);
         return true;
@@ -1,9 +1,12 @@
 package carpet.script;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Consumer;
 
 public class Context
 {
@@ -17,21 +20,187 @@ public class Context
     static final int SIGNATURE = 7;
     static final int LOCALIZATION = 8;
 
-    private Map<String, LazyValue> variables = new HashMap<>();
+    /** loop variables set by the built-ins on every iteration, every expression has them at these slots */
+    static final int SLOT_VALUE = 0;
+    static final int SLOT_X = 1;
+    static final int SLOT_Y = 2;
+    static final int SLOT_Z = 3;
+    static final int SLOT_INDEX = 4;
+    static final int SLOT_ACCUMULATOR = 5;
+    private static final String [] LOOP_VARIABLES = {"_", "_x", "_y", "_z", "_i", "_a"};
+
+    /**
+     * Names of the local variables of an expression and their slots, shared by all frames running its code.
+     * Loop variables come first, variable nodes get their slot when the AST is built, then the slots are frozen
+     * so frames on any thread read them without locking. Names only set at runtime stay in the frame.
+     */
+    static class Slots
+    {
+        private Map<String, Integer> slots = new HashMap<>();
+        private List<String> names = new ArrayList<>();
+
+        Slots()
+        {
+            for (String name : LOOP_VARIABLES)
+            {
+                of(name);
+            }
+        }
+
+        /**
+         * Only while the AST is built, before the slots are frozen.
+         */
+        int of(String name)
+        {
+            Integer slot = slots.get(name);
+            if (slot == null)
+            {
+                slot = names.size();
+                names.add(name);
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+
+        void freeze()
+        {
+            slots = Collections.unmodifiableMap(slots);
+            names = Collections.unmodifiableList(names);
+        }
+
+        /**
+         * @return slot of the name, or -1 if the expression never used it
+         */
+        int find(String name)
+        {
+            Integer slot = slots.get(name);
+            return slot == null ? -1 : slot;
+        }
+
+        String name(int slot)
+        {
+            return names.get(slot);
+        }
+
+        int size()
+        {
+            return names.size();
+        }
+    }
+
+    private static final LazyValue [] NO_VARIABLES = new LazyValue[0];
+
+    /** slots of the expression running in this frame, none until it is bound to one */
+    private Slots slots = null;
+    /** local variables of the frame, indexed by slot */
+    private LazyValue [] variables = NO_VARIABLES;
+    /** variables of the frame the expression has no slot for, like dynamic var() names */
+    private Map<String, LazyValue> unslotted = null;
 
     protected ScriptHost host;
 
+    /** result of the last NumericLazyValue evaluated in this frame, read right after by its parent */
+    double number;
+
     Context(ScriptHost host)
     {
         this.host = host;
     }
 
+    /**
+     * Makes the frame use the frozen slots of the expression about to run in it,
+     * variables set before move to their slots in the expression.
+     */
+    Context bind(Slots expressionSlots)
+    {
+        if (slots == expressionSlots)
+        {
+            return this;
+        }
+        Slots previous = slots;
+        LazyValue [] values = variables;
+        Map<String, LazyValue> others = unslotted;
+        slots = expressionSlots;
+        variables = new LazyValue[expressionSlots.size()];
+        unslotted = null;
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] != null)
+            {
+                put(previous.name(i), values[i]);
+            }
+        }
+        if (others != null)
+        {
+            others.forEach(this::put);
+        }
+        return this;
+    }
+
+    private int slotOf(String name)
+    {
+        return slots == null ? -1 : slots.find(name);
+    }
+
+    private void put(String name, LazyValue lv)
+    {
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            variables[slot] = lv;
+            return;
+        }
+        if (unslotted == null)
+        {
+            unslotted = new HashMap<>();
+        }
+        unslotted.put(name, lv);
+    }
+
+    private void remove(String name)
+    {
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            variables[slot] = null;
+        }
+        else if (unslotted != null)
+        {
+            unslotted.remove(name);
+        }
+    }
 
     LazyValue getVariable(String name)
     {
-        if (variables.containsKey(name))
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            return getVariable(slot, name);
+        }
+        LazyValue lv = unslotted == null ? null : unslotted.get(name);
+        return lv != null ? lv : host.globalVariables.get(name);
+    }
+
+    /**
+     * @param slot slot of the name in the expression the frame is bound to, resolved once by the caller
+     */
+    LazyValue getVariable(int slot, String name)
+    {
+        if (slot < variables.length)
+        {
+            LazyValue lv = variables[slot];
+            if (lv != null)
+            {
+                return lv;
+            }
+        }
+        else if (unslotted != null) // frame not bound to an expression
         {
-            return variables.get(name);
+            LazyValue lv = unslotted.get(name);
+            if (lv != null)
+            {
+                return lv;
+            }
         }
         return host.globalVariables.get(name);
     }
@@ -43,13 +212,28 @@ public class Context
             host.globalVariables.put(name, lv);
             return;
         }
-        variables.put(name, lv);
+        put(name, lv);
+    }
+
+    void setVariable(int slot, String name, LazyValue lv)
+    {
+        if (name.startsWith("global_"))
+        {
+            host.globalVariables.put(name, lv);
+            return;
+        }
+        if (slot < variables.length)
+        {
+            variables[slot] = lv;
+            return;
+        }
+        put(name, lv);
     }
 
 
     boolean isAVariable(String name)
     {
-        return variables.containsKey(name) || host.globalVariables.containsKey(name);
+        return getVariable(name) != null;
     }
 
 
@@ -60,7 +244,7 @@ public class Context
             host.globalVariables.remove(variable);
             return;
         }
-        variables.remove(variable);
+        remove(variable);
     }
     void clearAll(String variable)
     {
@@ -69,18 +253,30 @@ public class Context
             host.globalVariables.remove(variable);
             return;
         }
-        variables.remove(variable);
+        remove(variable);
     }
 
     public Context with(String variable, LazyValue lv)
     {
-        variables.put(variable, lv);
+        put(variable, lv);
         return this;
     }
 
     public Set<String> getAllVariableNames()
     {
-        return variables.keySet();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < variables.length; i++)
+        {
+            if (variables[i] != null)
+            {
+                names.add(slots.name(i));
+            }
+        }
+        if (unslotted != null)
+        {
+            names.addAll(unslotted.keySet());
+        }
+        return names;
     }
 
     public Context recreate()
@@ -34,6 +34,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
 import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -354,13 +356,20 @@ public class Expression implements Cloneable
     /** Cached AST (Abstract Syntax Tree) (root) of the expression */
     private LazyValue ast = null;
 
-    /** script specific operatos and built-in functions */
-    private Map<String, ILazyOperator> operators = new HashMap<>();
+    /** local variable slots of the expression, frames running its code are bound to them */
+    final Context.Slots slots = new Context.Slots();
+
+    /** script specific operatos and built-in functions, shared with all expressions using the same built-ins */
+    private Map<String, ILazyOperator> operators;
     boolean isAnOperator(String opname) { return operators.containsKey(opname) || operators.containsKey(opname+"u");}
 
-    private Map<String, ILazyFunction> functions = new HashMap<>();
+    private Map<String, ILazyFunction> functions;
     Set<String> getFunctionNames() {return functions.keySet();}
 
+    /** plain double versions of arithmetic operators and math functions, names of both never clash */
+    private Map<String, DoubleUnaryOperator> doubleUnaryOperations;
+    private Map<String, DoubleBinaryOperator> doubleBinaryOperations;
+
     //static final Map<String, UserDefinedFunction> globalFunctions = new HashMap<>();
 
     //static final Map<String, LazyValue> globalVariables = new HashMap<>();
@@ -630,15 +639,17 @@ public class Expression implements Cloneable
         });
     }
 
-    private void addMathematicalUnaryFunction(String name, Function<Double, Double> fun)
+    private void addMathematicalUnaryFunction(String name, DoubleUnaryOperator fun)
     {
-        addUnaryFunction(name, (v) -> new NumericValue(fun.apply(NumericValue.asNumber(v).getDouble())));
+        addUnaryFunction(name, (v) -> new NumericValue(fun.applyAsDouble(NumericValue.asNumber(v).getDouble())));
+        doubleUnaryOperations.put(name.toLowerCase(Locale.ROOT), fun);
     }
 
-    private void addMathematicalBinaryFunction(String name, BiFunction<Double, Double, Double> fun)
+    private void addMathematicalBinaryFunction(String name, DoubleBinaryOperator fun)
     {
         addBinaryFunction(name, (w, v) ->
-                new NumericValue(fun.apply(NumericValue.asNumber(w).getDouble(), NumericValue.asNumber(v).getDouble())));
+                new NumericValue(fun.applyAsDouble(NumericValue.asNumber(w).getDouble(), NumericValue.asNumber(v).getDouble())));
+        doubleBinaryOperations.put(name.toLowerCase(Locale.ROOT), fun);
     }
 
 
@@ -694,6 +705,7 @@ public class Expression implements Cloneable
                     );
                 }
                 Context newFrame = c.recreate();
+                newFrame.bind(function_context.slots);
 
                 for (String global : globals)
                 {
@@ -992,10 +1004,10 @@ public class Expression implements Cloneable
             {
                 if (lv.size() == 1)
                     return (c_, t_) -> Value.NULL;
-                LazyValue __ = c.getVariable("_");
-                c.setVariable("_", (__c, __t) -> ret.retval.reboundedTo("_"));
+                LazyValue __ = c.getVariable(Context.SLOT_VALUE, "_");
+                c.setVariable(Context.SLOT_VALUE, "_", (__c, __t) -> ret.retval.reboundedTo("_"));
                 Value val = lv.get(1).evalValue(c, t);
-                c.setVariable("_",__);
+                c.setVariable(Context.SLOT_VALUE, "_", __);
                 return (c_, t_) -> val;
             }
         });
@@ -1219,6 +1231,13 @@ public class Expression implements Cloneable
                 new NumericValue(NumericValue.asNumber(v1).getDouble() % NumericValue.asNumber(v2).getDouble()));
         addBinaryOperator("^", precedence.get("exponent^"), false, (v1, v2) ->
                 new NumericValue(Math.pow(NumericValue.asNumber(v1).getDouble(), NumericValue.asNumber(v2).getDouble())));
+        // same on plain numbers, for arithmetic nested in arithmetic
+        doubleBinaryOperations.put("+", (a, b) -> a + b);
+        doubleBinaryOperations.put("-", (a, b) -> a - b);
+        doubleBinaryOperations.put("*", (a, b) -> a * b);
+        doubleBinaryOperations.put("/", (a, b) -> a / b);
+        doubleBinaryOperations.put("%", (a, b) -> a % b);
+        doubleBinaryOperations.put("^", Math::pow);
 
         addLazyBinaryOperator("&&", precedence.get("and&&"), false, (c, t, lv1, lv2) ->
         {
@@ -1360,6 +1379,8 @@ public class Expression implements Cloneable
         addUnaryOperator("-",  false, (v) -> new NumericValue(-NumericValue.asNumber(v).getDouble()));
 
         addUnaryOperator("+", false, (v) -> new NumericValue(NumericValue.asNumber(v).getDouble()));
+        doubleUnaryOperations.put("-u", (d) -> -d);
+        doubleUnaryOperations.put("+u", (d) -> d);
 
         addLazyUnaryOperator("!", precedence.get("unary+-!"), false, (c, t, lv)-> lv.evalValue(c, Context.BOOLEAN).getBoolean() ? (cc, tt)-> Value.FALSE : (cc, tt) -> Value.TRUE); // might need context boolean
 
@@ -1814,19 +1835,19 @@ public class Expression implements Cloneable
                 throw new InternalExpressionException("First argument for sort_key should be a List");
             LazyValue sortKey = lv.get(1);
             //scoping
-            LazyValue __ = c.getVariable("_");
+            LazyValue __ = c.getVariable(Context.SLOT_VALUE, "_");
 
             List<Value> toSort = new ArrayList<>(((ListValue) v).getItems());
 
             Collections.sort(toSort,(v1, v2) -> {
-                c.setVariable("_",(cc, tt) -> v1);
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> v1);
                 Value ev1 = sortKey.evalValue(c);
-                c.setVariable("_",(cc, tt) -> v2);
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> v2);
                 Value ev2 = sortKey.evalValue(c);
                 return ev1.compareTo(ev2);
             });
             //revering scope
-            c.setVariable("_", __);
+            c.setVariable(Context.SLOT_VALUE, "_", __);
             return (cc, tt) -> ListValue.wrap(toSort);
         });
 
@@ -1914,17 +1935,17 @@ public class Expression implements Cloneable
             long i = 0;
             Value lastOne = Value.NULL;
             //scoping
-            LazyValue _val = c.getVariable("_");
-            c.setVariable("_",(cc, tt) -> new NumericValue(0).bindTo("_"));
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> new NumericValue(0).bindTo("_"));
             while (i<limit && condition.evalValue(c, Context.BOOLEAN).getBoolean() )
             {
                 lastOne = expr.evalValue(c);
                 i++;
                 long seriously = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
             }
             //revering scope
-            c.setVariable("_", _val);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
             Value lastValueNoKidding = lastOne;
             return (cc, tt) -> lastValueNoKidding;
         });
@@ -1944,17 +1965,17 @@ public class Expression implements Cloneable
             LazyValue cond = null;
             if(lv.size() > 2) cond = lv.get(2);
             //scoping
-            LazyValue _val = c.getVariable("_");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
             for (long i=0; i < limit; i++)
             {
                 long whyYouAsk = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(whyYouAsk).bindTo("_"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> new NumericValue(whyYouAsk).bindTo("_"));
                 lastOne = expr.evalValue(c);
                 if (cond != null && cond.evalValue(c).getBoolean())
                     break;
             }
             //revering scope
-            c.setVariable("_", _val);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
             Value trulyLastOne = lastOne;
             return (cc, tt) -> trulyLastOne;
         });
@@ -1977,8 +1998,8 @@ public class Expression implements Cloneable
             LazyValue cond = null;
             if(lv.size() > 2) cond = lv.get(2);
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _iter = c.getVariable("_i");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _iter = c.getVariable(Context.SLOT_INDEX, "_i");
             List<Value> result = new ArrayList<>();
             for (int i=0; iterator.hasNext(); i++)
             {
@@ -1986,8 +2007,8 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 int doYouReally = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_INDEX, "_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
                 result.add(expr.evalValue(c));
                 if (cond != null && cond.evalValue(c).getBoolean())
                 {
@@ -1999,8 +2020,8 @@ public class Expression implements Cloneable
             ((ListValue) rval).fatality();
             LazyValue ret = (cc, tt) -> ListValue.wrap(result);
             //revering scope
-            c.setVariable("_", _val);
-            c.setVariable("_i", _iter);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
+            c.setVariable(Context.SLOT_INDEX, "_i", _iter);
             return ret;
         });
 
@@ -2022,8 +2043,8 @@ public class Expression implements Cloneable
             LazyValue cond = null;
             if(lv.size() > 2) cond = lv.get(2);
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _iter = c.getVariable("_i");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _iter = c.getVariable(Context.SLOT_INDEX, "_i");
             List<Value> result = new ArrayList<>();
             for (int i=0; iterator.hasNext(); i++)
             {
@@ -2031,8 +2052,8 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_INDEX, "_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if(expr.evalValue(c).getBoolean())
                     result.add(next);
                 if (cond != null && cond.evalValue(c).getBoolean())
@@ -2045,8 +2066,8 @@ public class Expression implements Cloneable
             ((ListValue) rval).fatality();
             LazyValue ret = (cc, tt) -> ListValue.wrap(result); // might be a trap - lazy evaluation
             //revering scope
-            c.setVariable("_", _val);
-            c.setVariable("_i", _iter);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
+            c.setVariable(Context.SLOT_INDEX, "_i", _iter);
             return ret;
         });
 
@@ -2062,8 +2083,8 @@ public class Expression implements Cloneable
             Iterator<Value> iterator = ((ListValue) rval).iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _iter = c.getVariable("_i");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _iter = c.getVariable(Context.SLOT_INDEX, "_i");
             Value result = Value.NULL;
             for (int i=0; iterator.hasNext(); i++)
             {
@@ -2071,8 +2092,8 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_INDEX, "_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if(expr.evalValue(c).getBoolean())
                 {
                     result = next;
@@ -2084,8 +2105,8 @@ public class Expression implements Cloneable
             //revering scope
             ((ListValue) rval).fatality();
             Value whyWontYouTrustMeJava = result;
-            c.setVariable("_", _val);
-            c.setVariable("_i", _iter);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
+            c.setVariable(Context.SLOT_INDEX, "_i", _iter);
             return (cc, tt) -> whyWontYouTrustMeJava;
         });
 
@@ -2100,8 +2121,8 @@ public class Expression implements Cloneable
             Iterator<Value> iterator = ((ListValue) rval).iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _iter = c.getVariable("_i");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _iter = c.getVariable(Context.SLOT_INDEX, "_i");
             LazyValue result = LazyValue.TRUE;
             for (int i=0; iterator.hasNext(); i++)
             {
@@ -2109,8 +2130,8 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_INDEX, "_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if(!expr.evalValue(c).getBoolean())
                 {
                     result = LazyValue.FALSE;
@@ -2121,8 +2142,8 @@ public class Expression implements Cloneable
             }
             //revering scope
             ((ListValue) rval).fatality();
-            c.setVariable("_", _val);
-            c.setVariable("_i", _iter);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
+            c.setVariable(Context.SLOT_INDEX, "_i", _iter);
             return result;
         });
 
@@ -2144,8 +2165,8 @@ public class Expression implements Cloneable
             if(lv.size() > 2) cond = lv.get(2);
 
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _iter = c.getVariable("_i");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _iter = c.getVariable(Context.SLOT_INDEX, "_i");
             int successCount = 0;
             for (int i=0; iterator.hasNext(); i++)
             {
@@ -2153,8 +2174,8 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_INDEX, "_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if(expr.evalValue(c).getBoolean())
                     successCount++;
                 if (cond != null && cond.evalValue(c).getBoolean())
@@ -2166,8 +2187,8 @@ public class Expression implements Cloneable
             }
             //revering scope
             ((ListValue) rval).fatality();
-            c.setVariable("_", _val);
-            c.setVariable("_i", _iter);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
+            c.setVariable(Context.SLOT_INDEX, "_i", _iter);
             long promiseWontChange = successCount;
             return (cc, tt) -> new NumericValue(promiseWontChange);
         });
@@ -2194,8 +2215,8 @@ public class Expression implements Cloneable
             }
 
             //scoping
-            LazyValue _val = c.getVariable("_");
-            LazyValue _acc = c.getVariable("_a");
+            LazyValue _val = c.getVariable(Context.SLOT_VALUE, "_");
+            LazyValue _acc = c.getVariable(Context.SLOT_ACCUMULATOR, "_a");
 
             while (iterator.hasNext())
             {
@@ -2203,15 +2224,15 @@ public class Expression implements Cloneable
                 String var = next.boundVariable;
                 next.bindTo("_");
                 Value promiseWontChangeYou = acc;
-                c.setVariable("_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable(Context.SLOT_ACCUMULATOR, "_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
+                c.setVariable(Context.SLOT_VALUE, "_", (cc, tt) -> next);
                 acc = expr.evalValue(c);
                 next.boundVariable = var;
             }
             //reverting scope
             ((ListValue) rval).fatality();
-            c.setVariable("_a", _acc);
-            c.setVariable("_", _val);
+            c.setVariable(Context.SLOT_ACCUMULATOR, "_a", _acc);
+            c.setVariable(Context.SLOT_VALUE, "_", _val);
 
             Value hopeItsEnoughPromise = acc;
             return (cc, tt) -> hopeItsEnoughPromise;
@@ -2584,10 +2605,33 @@ public class Expression implements Cloneable
      * @param expression .
      */
     public Expression(String expression)
+    {
+        this(expression, languageBuiltIns());
+    }
+
+    /**
+     * Expression sharing the operators and functions of the built-ins, without registering them again
+     * @param expression .
+     * @param builtIns .
+     */
+    Expression(String expression, Expression builtIns)
     {
         this.expression = expression.trim().
                 replaceAll("\\r\\n?", "\n").
-                replaceAll(";+$", "");VariablesAndConstants();
+                replaceAll(";+$", "");
+        this.operators = builtIns.operators;
+        this.functions = builtIns.functions;
+        this.doubleUnaryOperations = builtIns.doubleUnaryOperations;
+        this.doubleBinaryOperations = builtIns.doubleBinaryOperations;
+    }
+
+    private Expression()
+    {
+        this.operators = new HashMap<>();
+        this.functions = new HashMap<>();
+        this.doubleUnaryOperations = new HashMap<>();
+        this.doubleBinaryOperations = new HashMap<>();
+        VariablesAndConstants();
         UserDefinedFunctionsAndControlFlow();
         Operators();
         ArithmeticOperations();
@@ -2595,6 +2639,35 @@ public class Expression implements Cloneable
         ListsLoopsAndHigherOrderFunctions();
     }
 
+    /**
+     * @return fresh set of language built-ins, APIs add their functions to it before it's frozen
+     */
+    static Expression newBuiltIns()
+    {
+        return new Expression();
+    }
+
+    Expression freeze()
+    {
+        operators = Collections.unmodifiableMap(operators);
+        functions = Collections.unmodifiableMap(functions);
+        doubleUnaryOperations = Collections.unmodifiableMap(doubleUnaryOperations);
+        doubleBinaryOperations = Collections.unmodifiableMap(doubleBinaryOperations);
+        return this;
+    }
+
+    /** language built-ins, registered once on first use, user defined functions live in their ScriptHost.
+     * class initialisation publishes the frozen instance safely to any thread that parses a script */
+    private static class BuiltIns
+    {
+        static final Expression INSTANCE = newBuiltIns().freeze();
+    }
+
+    private static Expression languageBuiltIns()
+    {
+        return BuiltIns.INSTANCE;
+    }
+
     private List<Tokenizer.Token> shuntingYard()
     {
         List<Tokenizer.Token> outputQueue = new ArrayList<>();
@@ -2777,10 +2850,7 @@ public class Expression implements Cloneable
     }
     private Value eval(Context c, Integer expectedType)
     {
-        if (ast == null)
-        {
-            ast = getAST();
-        }
+        c.bind(compiledSlots());
         return evalValue(() -> ast, c, expectedType);
     }
 
@@ -2808,6 +2878,20 @@ public class Expression implements Cloneable
         }
     }
 
+    /**
+     * Builds the AST on first use, variable slots of the expression can't change from then on.
+     * @return slots to bind frames running the expression to
+     */
+    Context.Slots compiledSlots()
+    {
+        if (ast == null)
+        {
+            ast = getAST();
+            slots.freeze();
+        }
+        return slots;
+    }
+
     private LazyValue getAST()
     {
         Stack<LazyValue> stack = new Stack<>();
@@ -2820,35 +2904,48 @@ public class Expression implements Cloneable
                 case UNARY_OPERATOR:
                 {
                     final LazyValue value = stack.pop();
-                    LazyValue result = (c, t) -> operators.get(token.surface).lazyEval(c, t, this, token, value, null).evalValue(c);
+                    // operators are resolved once here, not on every evaluation of the node
+                    final ILazyOperator operator = operators.get(token.surface);
+                    DoubleUnaryOperator numeric = doubleUnaryOperations.get(token.surface);
+                    LazyValue result = numeric != null ?
+                            NumericLazyValue.unary(numeric, value, (c, lv1, lv2) -> operator.lazyEval(c, Context.NONE, this, token, lv1, lv2).evalValue(c)) :
+                            (c, t) -> operator.lazyEval(c, t, this, token, value, null).evalValue(c);
                     stack.push(result);
                     break;
                 }
                 case OPERATOR:
                     final LazyValue v1 = stack.pop();
                     final LazyValue v2 = stack.pop();
-                    LazyValue result = (c,t) -> operators.get(token.surface).lazyEval(c, t,this, token, v2, v1).evalValue(c);
+                    final ILazyOperator operator = operators.get(token.surface);
+                    DoubleBinaryOperator numeric = doubleBinaryOperations.get(token.surface);
+                    LazyValue result = numeric != null ?
+                            NumericLazyValue.binary(numeric, v2, v1, (c, lv1, lv2) -> operator.lazyEval(c, Context.NONE, this, token, lv1, lv2).evalValue(c)) :
+                            (c,t) -> operator.lazyEval(c, t,this, token, v2, v1).evalValue(c);
                     stack.push(result);
                     break;
                 case VARIABLE:
+                    // slot is resolved once, so reading the variable doesn't hash its name
+                    final int slot = slots.of(token.surface);
                     stack.push((c, t) ->
                     {
-                        if (!c.isAVariable(token.surface)) // new variable
+                        LazyValue lazyVariable = c.getVariable(slot, token.surface);
+                        if (lazyVariable == null) // new variable
                         {
-                            c.setVariable(token.surface, (cc, tt ) -> Value.ZERO.reboundedTo(token.surface));
+                            c.setVariable(slot, token.surface, (cc, tt ) -> Value.ZERO.reboundedTo(token.surface));
+                            lazyVariable = c.getVariable(slot, token.surface);
                         }
-                        LazyValue lazyVariable = c.getVariable(token.surface);
                         return lazyVariable.evalValue(c);
                     });
                     break;
                 case FUNCTION:
                     String name = token.surface.toLowerCase(Locale.ROOT);
+                    ILazyFunction known = functions.get(name);
                     ILazyFunction f;
                     ArrayList<LazyValue> p;
-                    boolean isKnown = functions.containsKey(name); // globals will be evaluated lazily, not at compile time via .
+                    boolean isKnown = known != null; // globals will be evaluated lazily, not at compile time via .
                     if (isKnown)
                     {
-                        f = functions.get(name);
+                        f = known;
                         p = new ArrayList<>(!f.numParamsVaries() ? f.getNumParams() : 0);
                     }
                     else // potentially unknown function or just unknown function
@@ -2862,19 +2959,46 @@ public class Expression implements Cloneable
                     {
                         p.add(0, stack.pop());
                     }
-                    if (!isKnown) p.add( (c, t) -> new StringValue(name));
+                    if (!isKnown)
+                    {
+                        Value functionName = new StringValue(name);
+                        p.add( (c, t) -> functionName);
+                    }
 
                     if (stack.peek() == LazyValue.PARAMS_START)
                     {
                         stack.pop();
                     }
 
-                    stack.push((c, t) -> f.lazyEval(c, t, this, token, p).evalValue(c));
+                    if (isKnown && p.size() == 1 && doubleUnaryOperations.containsKey(name))
+                    {
+                        stack.push(NumericLazyValue.unary(doubleUnaryOperations.get(name), p.get(0),
+                                (c, lv1, lv2) -> f.lazyEval(c, Context.NONE, this, token, Collections.singletonList(lv1)).evalValue(c)));
+                    }
+                    else if (isKnown && p.size() == 2 && doubleBinaryOperations.containsKey(name))
+                    {
+                        stack.push(NumericLazyValue.binary(doubleBinaryOperations.get(name), p.get(0), p.get(1),
+                                (c, lv1, lv2) -> f.lazyEval(c, Context.NONE, this, token, Arrays.asList(lv1, lv2)).evalValue(c)));
+                    }
+                    else
+                    {
+                        stack.push((c, t) -> f.lazyEval(c, t, this, token, p).evalValue(c));
+                    }
                     break;
                 case OPEN_PAREN:
                     stack.push(LazyValue.PARAMS_START);
                     break;
                 case LITERAL:
+                    try
+                    {
+                        // parsed once, each evaluation still gets its own value
+                        stack.push(NumericLazyValue.constant(new NumericValue(token.surface).getDouble()));
+                        break;
+                    }
+                    catch (NumberFormatException ignored)
+                    {
+                        // reported when evaluated, as it always was
+                    }
                     stack.push((c, t) ->
                     {
                         try
@@ -2891,7 +3015,7 @@ public class Expression implements Cloneable
                     stack.push((c, t) -> new StringValue(token.surface) ); // was originally null
                     break;
                 case HEX_LITERAL:
-                    stack.push((c, t) -> new NumericValue(new BigInteger(token.surface.substring(2), 16).doubleValue()));
+                    stack.push(NumericLazyValue.constant(new BigInteger(token.surface.substring(2), 16).doubleValue()));
                     break;
                 default:
                     throw new ExpressionException(this, token, "Unexpected token '" + token.surface + "'");
@@ -0,0 +1,175 @@
+package carpet.script;
+
+import carpet.script.Fluff.TriFunction;
+import carpet.script.value.NumericValue;
+import carpet.script.value.Value;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Arithmetic and math function nodes of the AST. Nested arithmetic passes plain doubles between nodes
+ * via Context.number, and a NumericValue is only created for the result leaving the arithmetic.
+ * Operands that turn out not to be numbers (strings, lists, null) go through the regular operator or function.
+ * Arithmetic of literals only is computed once when the AST is built.
+ */
+abstract class NumericLazyValue implements LazyValue
+{
+    /** returned instead of a value when the result is a number, left in Context.number */
+    private static final Value NUMBER = new NumericValue(0);
+
+    /**
+     * @return NUMBER with the result in c.number, or the value if it's not a number
+     */
+    abstract Value evalNumber(Context c);
+
+    @Override
+    public Value evalValue(Context c, Integer type)
+    {
+        Value value = evalNumber(c);
+        return value == NUMBER ? new NumericValue(c.number) : value;
+    }
+
+    private static Value operand(LazyValue operand, Context c)
+    {
+        if (operand instanceof NumericLazyValue)
+        {
+            return ((NumericLazyValue) operand).evalNumber(c);
+        }
+        Value value = operand.evalValue(c);
+        if (value instanceof NumericValue)
+        {
+            c.number = ((NumericValue) value).getDouble();
+            return NUMBER;
+        }
+        return value;
+    }
+
+    private static LazyValue materialized(Value value, double number)
+    {
+        Value result = value == NUMBER ? new NumericValue(number) : value;
+        return (c, t) -> result;
+    }
+
+    static LazyValue constant(double value)
+    {
+        return new Constant(value);
+    }
+
+    /**
+     * @param fallback regular operator or function, gets the context and the operand, evaluated already
+     */
+    static LazyValue unary(DoubleUnaryOperator operation, LazyValue operand, TriFunction<Context, LazyValue, LazyValue, Value> fallback)
+    {
+        if (operand instanceof Constant)
+        {
+            try
+            {
+                return new Constant(operation.applyAsDouble(((Constant) operand).value));
+            }
+            catch (RuntimeException ignored)
+            {
+                // leave the error to the evaluation, like it was written
+            }
+        }
+        return new Unary(operation, operand, fallback);
+    }
+
+    /**
+     * @param fallback regular operator or function, gets the context and both operands, evaluated already
+     */
+    static LazyValue binary(DoubleBinaryOperator operation, LazyValue left, LazyValue right, TriFunction<Context, LazyValue, LazyValue, Value> fallback)
+    {
+        if (left instanceof Constant && right instanceof Constant)
+        {
+            try
+            {
+                return new Constant(operation.applyAsDouble(((Constant) left).value, ((Constant) right).value));
+            }
+            catch (RuntimeException ignored)
+            {
+                // leave the error to the evaluation, like it was written
+            }
+        }
+        return new Binary(operation, left, right, fallback);
+    }
+
+    private static class Constant extends NumericLazyValue
+    {
+        private final double value;
+
+        Constant(double value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        Value evalNumber(Context c)
+        {
+            c.number = value;
+            return NUMBER;
+        }
+
+        @Override
+        public Value evalValue(Context c, Integer type)
+        {
+            return new NumericValue(value);
+        }
+    }
+
+    private static class Unary extends NumericLazyValue
+    {
+        private final DoubleUnaryOperator operation;
+        private final LazyValue operand;
+        private final TriFunction<Context, LazyValue, LazyValue, Value> fallback;
+
+        Unary(DoubleUnaryOperator operation, LazyValue operand, TriFunction<Context, LazyValue, LazyValue, Value> fallback)
+        {
+            this.operation = operation;
+            this.operand = operand;
+            this.fallback = fallback;
+        }
+
+        @Override
+        Value evalNumber(Context c)
+        {
+            Value value = operand(operand, c);
+            if (value == NUMBER)
+            {
+                c.number = operation.applyAsDouble(c.number);
+                return NUMBER;
+            }
+            return fallback.apply(c, materialized(value, 0.0), null);
+        }
+    }
+
+    private static class Binary extends NumericLazyValue
+    {
+        private final DoubleBinaryOperator operation;
+        private final LazyValue left;
+        private final LazyValue right;
+        private final TriFunction<Context, LazyValue, LazyValue, Value> fallback;
+
+        Binary(DoubleBinaryOperator operation, LazyValue left, LazyValue right, TriFunction<Context, LazyValue, LazyValue, Value> fallback)
+        {
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+            this.fallback = fallback;
+        }
+
+        @Override
+        Value evalNumber(Context c)
+        {
+            Value leftValue = operand(left, c);
+            double leftNumber = c.number;
+            Value rightValue = operand(right, c);
+            if (leftValue == NUMBER && rightValue == NUMBER)
+            {
+                c.number = operation.applyAsDouble(leftNumber, c.number);
+                return NUMBER;
+            }
+            return fallback.apply(c, materialized(leftValue, leftNumber), materialized(rightValue, c.number));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package carpet.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used expressions by host and source text, so commands repeating the same code
+ * (command blocks with /script run, scan, fill) reuse the tokens and AST of the previous run.
+ * Parsed expressions don't depend on the host, it's in the key so a module reload can drop its entries.
+ */
+public class ParsedScriptCache
+{
+    private static final int MAX_SIZE = 256;
+
+    private static class Key
+    {
+        final String host;
+        final String code;
+
+        Key(String host, String code)
+        {
+            this.host = host;
+            this.code = code;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return Objects.equals(host, other.host) && code.equals(other.code);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31*Objects.hashCode(host) + code.hashCode();
+        }
+    }
+
+    private static final Map<Key, Expression> cache = new LinkedHashMap<Key, Expression>(64, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Expression> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+    private static long hits = 0L;
+    private static long misses = 0L;
+
+    static synchronized Expression get(ScriptHost host, String code, Expression builtIns)
+    {
+        Key key = new Key(host.getName(), code);
+        Expression expression = cache.get(key);
+        if (expression != null)
+        {
+            hits++;
+            return expression;
+        }
+        misses++;
+        expression = new Expression(code, builtIns);
+        cache.put(key, expression);
+        return expression;
+    }
+
+    /**
+     * Drops all expressions of the host, null being the global host
+     */
+    public static synchronized void invalidate(String host)
+    {
+        cache.keySet().removeIf(key -> Objects.equals(key.host, host));
+    }
+
+    public static synchronized void clear()
+    {
+        cache.clear();
+        hits = 0L;
+        misses = 0L;
+    }
+
+    public static synchronized int size()
+    {
+        return cache.size();
+    }
+
+    public static synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public static synchronized long getMisses()
+    {
+        return misses;
+    }
+}
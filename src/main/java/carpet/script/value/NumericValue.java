@@ -9,7 +9,7 @@ import static java.lang.Math.abs;
 
 public class NumericValue extends Value
 {
-    private Double value;
+    private double value;
     final static double epsilon = 1024*Double.MIN_VALUE;
 
     public static NumericValue asNumber(Value v1)
@@ -49,7 +49,7 @@ public class NumericValue extends Value
     @Override
     public boolean getBoolean()
     {
-        return value != null && abs(value) > epsilon;
+        return abs(value) > epsilon;
     }
     public double getDouble()
     {
@@ -114,7 +114,7 @@ public class NumericValue extends Value
         }
         if (o instanceof NumericValue)
         {
-            return value.compareTo(((NumericValue) o).getDouble());
+            return Double.compare(value, ((NumericValue) o).getDouble());
         }
         return getString().compareTo(o.getString());
     }
@@ -152,7 +152,7 @@ public class NumericValue extends Value
     @Override
     public int length()
     {
-        return Integer.toString(value.intValue()).length();
+        return Integer.toString((int)value).length();
     }
 
     @Override
@@ -1,6 +1,9 @@
 package carpet.settings;
 
 import carpet.CarpetServer;
+import carpet.helpers.TickSpeed;
+import carpet.utils.CarpetProfiler;
+import carpet.utils.CarpetProfilerExport;
 import carpet.utils.Messenger;
 import net.minecraft.command.CommandSource;
 import net.minecraft.server.MinecraftServer;
@@ -35,6 +38,21 @@ public class CarpetSettings
     @Rule(desc = "Gbhs sgnf sadsgras fhskdpri!", category = EXPERIMENTAL)
     public static boolean superSecretSetting = false;
 
+    @Rule(
+            desc = "Ticks each dimension on its own thread, at the same time",
+            extra = {
+                    "Network and players wait until all dimensions are done",
+                    "Entities changing dimensions are moved after all dimensions finished their tick",
+                    "Contraptions relying on the order dimensions tick in will behave differently",
+                    "Hopper counters, loggers and spawn tracking are safe, spawning takes turns while tracking spawns",
+                    "Vanilla state shared between dimensions is not guarded: redstone dust updating",
+                    "in two dimensions at once can compute wrong power levels",
+                    "Don't combine with /debug start, the vanilla profiler is not thread safe"
+            },
+            category = {EXPERIMENTAL, OPTIMIZATION}
+    )
+    public static boolean parallelDimensionTicking = false;
+
 
     @Rule(desc = "Guardians honor players invisibility effect", category = BUGFIX)
     public static boolean invisibilityFix = false;
@@ -163,6 +181,150 @@ public class CarpetSettings
     @Rule(desc = "Enables /tick command to control game clocks", category = COMMAND)
     public static boolean commandTick = true;
 
+    private static class TickWarpBatchingLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=1 && newValue <= 1200) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 1 to 1200";}
+    }
+    @Rule(
+            desc = "During /tick warp, runs player list and HUD updates only every N warped ticks",
+            extra = {
+                    "Autosaves are also held back to at most one every 45 seconds, plus one after the warp",
+                    "Player connections are still ticked every tick",
+                    "Set to 1 to warp with all of them every tick"
+            },
+            options = {"1", "20", "100"},
+            category = {CREATIVE, OPTIMIZATION},
+            validate = TickWarpBatchingLimits.class
+    )
+    public static int tickWarpBatching = 1;
+
+    @Rule(
+            desc = "How the server catches up after ticks took longer than the tick rate allows",
+            extra = {
+                    "burst: runs late ticks back to back, like vanilla",
+                    "skip: drops the backlog as soon as it is behind more than one tick",
+                    "smooth: catches up at most at twice the tick rate",
+                    "Any backlog above 2 seconds is dropped with the usual Can't keep up warning"
+            },
+            category = CREATIVE
+    )
+    public static TickSpeed.CatchUp tickCatchUp = TickSpeed.CatchUp.BURST;
+
+    private static class TickBudgetLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=0 && newValue <= 100) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 0 to 100";}
+    }
+    @Rule(
+            desc = "Percentage of the tick time after which deferrable work waits for spare time",
+            extra = {
+                    "Scheduled scarpet calls and HUD updates always run in the spare time after the tick",
+                    "Logger messages and spawn tracking wait once the tick is over budget",
+                    "Work waiting over 20 ticks runs regardless, set to 0 to disable"
+            },
+            options = {"0", "80", "100"},
+            category = {CREATIVE, OPTIMIZATION},
+            validate = TickBudgetLimits.class
+    )
+    public static int tickBudget = 0;
+
+    private static class TickHealthHistoryLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=0 && newValue <= 72000) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 0 to 72000";}
+    }
+    @Rule(
+            desc = "Number of recent ticks kept for /tick health percentiles",
+            extra = {
+                    "Keeps timings of each tick section in a rolling buffer at all times",
+                    "Set to 0 to disable"
+            },
+            options = {"0", "100", "1200", "6000"},
+            category = CREATIVE,
+            validate = TickHealthHistoryLimits.class
+    )
+    public static int tickHealthHistory = 0;
+
+    private static class FlightRecorderAvailable extends Validator<Boolean>
+    {
+        @Override public Boolean validate(CommandSource source, ParsedRule<Boolean> currentRule, Boolean newValue, String string) {
+            if (newValue && !CarpetProfiler.flight_recorder_available())
+            {
+                Messenger.m(source, "r This JVM doesn't support Flight Recorder events");
+                return null;
+            }
+            return newValue;
+        }
+        @Override
+        public String description() { return "Requires a JVM with jdk.jfr, like Java 11 or Java 8u262+";}
+    }
+    @Rule(
+            desc = "Emits profiler tick sections and entity type timings as JDK Flight Recorder events",
+            extra = {
+                    "Record with -XX:StartFlightRecording and look for carpet events in JDK Mission Control",
+                    "Keeps measuring every tick while enabled, no need for /tick health"
+            },
+            category = CREATIVE,
+            validate = FlightRecorderAvailable.class
+    )
+    public static boolean flightRecorderProfiling = false;
+
+    @Rule(
+            desc = "Appends /tick health and /tick entities results to files in the world's profiler folder",
+            extra = {
+                    "csv writes one row per section or entity type per report, json writes the same as json lines",
+                    "Files are written off the server thread"
+            },
+            category = CREATIVE
+    )
+    public static CarpetProfilerExport.Format tickHealthExport = CarpetProfilerExport.Format.NONE;
+
+    private static class SlowTickTimelinesLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=0 && newValue <= 100) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 0 to 100";}
+    }
+    @Rule(
+            desc = "Number of slowest ticks over slowTickBudget to keep full section timelines of",
+            extra = {
+                    "List them with /tick health slowest, export as Chrome trace json with /tick health slowest dump",
+                    "Set to 0 to disable"
+            },
+            options = {"0", "5", "10", "20"},
+            category = CREATIVE,
+            validate = SlowTickTimelinesLimits.class
+    )
+    public static int slowTickTimelines = 0;
+
+    private static class SlowTickBudgetLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=1 && newValue <= 10000) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 1 to 10000";}
+    }
+    @Rule(
+            desc = "Ticks longer than this percentage of the normal tick time are candidates for slowTickTimelines",
+            options = {"100", "200", "400"},
+            category = CREATIVE,
+            validate = SlowTickBudgetLimits.class
+    )
+    public static int slowTickBudget = 200;
+
     @Rule(desc = "Enables /log command to monitor events in the game via chat and overlays", category = COMMAND)
     public static boolean commandLog = true;
 
@@ -261,6 +423,27 @@ public class CarpetSettings
     )
     public static int fillLimit = 32768;
 
+    private static class FillTimeSliceLimits extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSource source, ParsedRule<Integer> currentRule, Integer newValue, String string) {
+            return (newValue>=0 && newValue <= 1000) ? newValue : null;
+        }
+        @Override
+        public String description() { return "You must choose a value from 0 to 1000";}
+    }
+    @Rule(
+            desc = "Milliseconds per tick that big fills can take before continuing in the next tick",
+            extra = {
+                    "Applies to /fill, /draw and /script fill, scan and outline",
+                    "Operations report their progress every second and never trip the watchdog",
+                    "Set to 0 to run them all at once"
+            },
+            options = {"0", "20", "40"},
+            category = CREATIVE,
+            validate = FillTimeSliceLimits.class
+    )
+    public static int fillTimeSlice = 0;
+
     @Rule(
             desc = "Customizable maximal entity collision limits, 0 for no limits",
             options = {"0", "1", "20"},
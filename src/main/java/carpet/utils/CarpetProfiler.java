@@ -1,153 +1,469 @@
 package carpet.utils;
 
+import carpet.helpers.TickSpeed;
 import carpet.settings.CarpetSettings;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.tileentity.TileEntityType;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.IRegistry;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.world.dimension.DimensionType;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 public class CarpetProfiler
 {
-    private static final HashMap<String, Long> time_repo = new HashMap<String, Long>();
     public static int tick_health_requested = 0;
     private static int tick_health_elapsed = 0;
-    private static int test_type = 0; //1 for ticks, 2 for entities;
-    private static String current_section = null;
-    private static long current_section_start = 0;
-    private static long current_tick_start = 0;
-    private static String [] GENERAL_SECTIONS = {"Network", "Autosave"};
+    private static volatile int test_type = 0; //1 for ticks, 2 for entities, 3 for chunks;
+    private static volatile long current_tick_start = 0;
+    private static long tick_time = 0;
+    private static String [] GENERAL_SECTIONS = {"Network", "Autosave", "Scarpet"};
     private static String [] DIMENSIONS = {"Overworld","The End","The Nether"};
+    private static final DimensionType [] DIMENSION_TYPES = {DimensionType.OVERWORLD, DimensionType.THE_END, DimensionType.NETHER};
     private static String [] SECTIONS = {"Spawning","Blocks","Entities","Tile Entities","Entities(client)","Tile Entities(client)","Villages"};
+    // section ids: general sections first, then each dimension gets a block of SECTIONS.length ids
+    // ids of the general sections, and of the sections of a dimension to pass to section_id
+    public static final int NETWORK = 0;
+    public static final int AUTOSAVE = 1;
+    public static final int SCARPET = 2;
+    public static final int SPAWNING = 0;
+    public static final int BLOCKS = 1;
+    public static final int ENTITIES = 2;
+    public static final int TILE_ENTITIES = 3;
+    public static final int ENTITIES_CLIENT = 4;
+    public static final int TILE_ENTITIES_CLIENT = 5;
+    public static final int VILLAGES = 6;
+    private static final int SECTION_COUNT = GENERAL_SECTIONS.length + DIMENSIONS.length * SECTIONS.length;
+    private static final long [] section_times = new long[SECTION_COUNT];
+    // section times of the current tick, gathered from all threads when the tick ends
+    private static final long [] tick_section_times = new long[SECTION_COUNT];
+    private static final long [] last_section_totals = new long[SECTION_COUNT];
+    private static final long [] section_totals = new long[SECTION_COUNT];
+    // flags are read from whichever thread ticks a world, but only changed by the server thread
+    private static volatile boolean sections_measured = false;
+    private static volatile boolean entities_measured = false;
+    private static volatile boolean entity_types_measured = false;
+    // entity and tile entity report totals, indexed by (dimension * variants + variant) * type_count + registry id
+    private static String [] ENTITY_VARIANTS = {"", "(client)", "??"};
+    private static int entity_type_count = 0;
+    private static int tileentity_type_count = 0;
+    private static volatile int entity_slots = 0;
+    private static volatile int tileentity_slots = 0;
+    private static String [] entity_names = new String[0];
+    private static String [] tileentity_names = new String[0];
+    private static long [] entity_times = new long[0];
+    private static long [] entity_counts = new long[0];
+    private static long [] tileentity_times = new long[0];
+    private static long [] tileentity_counts = new long[0];
+    // what all stripes summed up to at the end of the previous tick
+    private static long [] last_entity_times = new long[0];
+    private static long [] last_entity_counts = new long[0];
+    private static long [] last_tileentity_times = new long[0];
+    private static long [] last_tileentity_counts = new long[0];
+    private static long [] gathered_times = new long[0];
+    private static long [] gathered_counts = new long[0];
 
-    public static void prepare_tick_report(int ticks)
+    // statistical sampling of entity sections: on average only one in entity_sample_rate ticks is timed
+    private static volatile int entity_sample_rate = 1;
+
+    // chunk report: packed ChunkPos -> accumulated nanos for each dimension, server side only.
+    // Each dimension is ticked by one thread at a time, so each map has a single writer
+    private static final Long2LongOpenHashMap [] chunk_times = new Long2LongOpenHashMap[DIMENSIONS.length];
+    // y level of the last thing measured in a chunk, used for teleport links
+    private static final Long2IntOpenHashMap [] chunk_heights = new Long2IntOpenHashMap[DIMENSIONS.length];
+    static
     {
-        //maybe add so it only spams the sending player, but honestly - all may want to see it
-        time_repo.clear();
-        test_type = 1;
-        time_repo.put("tick",0L);
-        time_repo.put("Network",0L);
-        time_repo.put("Autosave",0L);
-        for (String section: GENERAL_SECTIONS)
+        for (int i = 0; i < DIMENSIONS.length; i++)
+        {
+            chunk_times[i] = new Long2LongOpenHashMap();
+            chunk_heights[i] = new Long2IntOpenHashMap();
+        }
+    }
+
+    // rolling history of the last history_length ticks, one row per section plus the whole tick in the last row
+    private static int history_length = 0;
+    private static long [][] history = new long[SECTION_COUNT+1][0];
+    private static int history_pos = 0;
+    private static int history_filled = 0;
+
+    // flight recorder events, kept as Objects so this class doesn't need jdk.jfr to load
+    private static final boolean flight_recorder_available = class_exists("jdk.jfr.Event");
+    private static volatile boolean flight_recorder = false;
+    private static volatile boolean timeline_measured = false;
+
+    // scarpet callbacks by app and by event as {time, calls}, only touched from the server thread
+    private static final Map<String, long[]> scarpet_hosts = new HashMap<>();
+    private static final Map<String, long[]> scarpet_host_totals = new HashMap<>();
+    private static final Map<String, long[]> scarpet_event_totals = new HashMap<>();
+    private static int scarpet_totals_since = 0;
+    private static Object current_tick_event = null;
+
+    // allocated bytes, only with HotSpot's extended ThreadMXBean, requested together with a report
+    private static final com.sun.management.ThreadMXBean allocation_bean = find_allocation_bean();
+    private static boolean allocations_requested = false;
+    private static volatile boolean allocations_measured = false;
+    private static long tick_bytes = 0L;
+    private static long current_tick_bytes_start = 0L;
+    private static final long [] section_bytes = new long[SECTION_COUNT];
+    private static final long [] last_section_bytes = new long[SECTION_COUNT];
+    private static long [] entity_bytes = new long[0];
+    private static long [] tileentity_bytes = new long[0];
+    private static long [] last_entity_bytes = new long[0];
+    private static long [] last_tileentity_bytes = new long[0];
+    private static long [] gathered_bytes = new long[0];
+
+    /**
+     * Accumulators of a single thread. Only the owning thread writes to them, and values only ever grow,
+     * so the server thread can sum all stripes at the end of a tick without locking and use the differences.
+     */
+    private static class Stripe
+    {
+        // only read and written in claim_stripe
+        Thread owner = Thread.currentThread();
+        final AtomicLongArray sections = new AtomicLongArray(SECTION_COUNT);
+        final AtomicLongArray section_bytes = new AtomicLongArray(SECTION_COUNT);
+        volatile AtomicLongArray entity_times = new AtomicLongArray(0);
+        volatile AtomicLongArray entity_counts = new AtomicLongArray(0);
+        volatile AtomicLongArray entity_bytes = new AtomicLongArray(0);
+        volatile AtomicLongArray tileentity_times = new AtomicLongArray(0);
+        volatile AtomicLongArray tileentity_counts = new AtomicLongArray(0);
+        volatile AtomicLongArray tileentity_bytes = new AtomicLongArray(0);
+        int current_section = -1;
+        long current_section_start = 0L;
+        long current_section_bytes_start = 0L;
+        Object current_section_event = null;
+        // the concurrent section runs next to the current one, like entities of a world ticked within another section
+        long concurrent_bytes_start = 0L;
+        Object concurrent_event = null;
+        long entity_bytes_start = 0L;
+        int sample_countdown = 1;
+
+        void add(AtomicLongArray array, int index, long value)
         {
-            time_repo.put(section,0L);
+            array.lazySet(index, array.get(index)+value); // single writer, no need for CAS
+        }
+
+        void add_entity(int index, long time, long bytes)
+        {
+            if (entity_times.length() != entity_slots)
+            {
+                entity_times = new AtomicLongArray(entity_slots);
+                entity_counts = new AtomicLongArray(entity_slots);
+                entity_bytes = new AtomicLongArray(entity_slots);
+            }
+            if (index < entity_times.length())
+            {
+                add(entity_times, index, time);
+                add(entity_counts, index, 1);
+                if (bytes > 0L)
+                {
+                    add(entity_bytes, index, bytes);
+                }
+            }
+        }
+
+        void add_tileentity(int index, long time, long bytes)
+        {
+            if (tileentity_times.length() != tileentity_slots)
+            {
+                tileentity_times = new AtomicLongArray(tileentity_slots);
+                tileentity_counts = new AtomicLongArray(tileentity_slots);
+                tileentity_bytes = new AtomicLongArray(tileentity_slots);
+            }
+            if (index < tileentity_times.length())
+            {
+                add(tileentity_times, index, time);
+                add(tileentity_counts, index, 1);
+                if (bytes > 0L)
+                {
+                    add(tileentity_bytes, index, bytes);
+                }
+            }
         }
-        for (String level: DIMENSIONS)
+    }
+    private static final List<Stripe> stripes = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Stripe> stripe = ThreadLocal.withInitial(CarpetProfiler::claim_stripe);
+
+    /**
+     * Stripes of threads that ended are taken over by new threads, so pools replacing their workers don't grow the list.
+     * Totals of a reused stripe keep growing from where the previous owner left them.
+     */
+    private static synchronized Stripe claim_stripe()
+    {
+        for (Stripe s : stripes)
         {
-            for (String section: SECTIONS)
+            if (!s.owner.isAlive())
             {
-                time_repo.put(level+"."+section,0L);
+                s.owner = Thread.currentThread();
+                s.current_section = -1;
+                s.current_section_start = 0L;
+                s.current_section_event = null;
+                s.concurrent_event = null;
+                s.sample_countdown = 1;
+                return s;
             }
         }
+        Stripe s = new Stripe();
+        stripes.add(s);
+        return s;
+    }
+
+    private static boolean class_exists(String name)
+    {
+        try
+        {
+            Class.forName(name, false, CarpetProfiler.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
 
+    public static boolean flight_recorder_available()
+    {
+        return flight_recorder_available;
+    }
+
+    private static com.sun.management.ThreadMXBean find_allocation_bean()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+            {
+                return (com.sun.management.ThreadMXBean) bean;
+            }
+        }
+        catch (LinkageError ignored)
+        {
+        }
+        return null;
+    }
+
+    public static boolean allocations_available()
+    {
+        return allocation_bean != null;
+    }
+
+    private static long allocated_bytes()
+    {
+        return allocation_bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void prepare_tick_report(int ticks, boolean allocations)
+    {
+        //maybe add so it only spams the sending player, but honestly - all may want to see it
+        clear_accumulators();
+        request_allocations(allocations);
+        test_type = 1;
         tick_health_elapsed = ticks;
         tick_health_requested = ticks;
         current_tick_start = 0L;
-        current_section_start = 0L;
-        current_section = null;
+        reset_current_section();
 
     }
 
-    public static void start_section(String dimension, String name)
+    private static void request_allocations(boolean allocations)
     {
-        if (tick_health_requested == 0L || test_type != 1)
+        allocations_requested = allocations && allocation_bean != null;
+        if (allocations_requested && !allocation_bean.isThreadAllocatedMemoryEnabled())
         {
-            return;
+            allocation_bean.setThreadAllocatedMemoryEnabled(true);
         }
-        if (current_tick_start == 0L)
+    }
+
+    private static void reset_current_section()
+    {
+        Stripe s = stripe.get();
+        s.current_section = -1;
+        s.current_section_start = 0L;
+        s.current_section_event = null;
+    }
+
+    private static void clear_accumulators()
+    {
+        tick_time = 0L;
+        tick_bytes = 0L;
+        Arrays.fill(section_times, 0L);
+        Arrays.fill(section_bytes, 0L);
+        Arrays.fill(tick_section_times, 0L);
+        Arrays.fill(entity_times, 0L);
+        Arrays.fill(entity_counts, 0L);
+        Arrays.fill(entity_bytes, 0L);
+        Arrays.fill(tileentity_times, 0L);
+        Arrays.fill(tileentity_counts, 0L);
+        Arrays.fill(tileentity_bytes, 0L);
+        for (int i = 0; i < DIMENSIONS.length; i++)
         {
-            return;
+            chunk_times[i].clear();
+            chunk_heights[i].clear();
         }
-        if (current_section != null)
+        scarpet_hosts.clear();
+    }
+
+    /**
+     * @return index of the dimension for section_id and the entity sections, -1 for dimensions that are not profiled
+     */
+    public static int dimension_index(DimensionType dimension)
+    {
+        for (int i = 0; i < DIMENSION_TYPES.length; i++)
         {
-            end_current_section();
+            if (DIMENSION_TYPES[i] == dimension)
+            {
+                return i;
+            }
         }
-        String key = name;
-        if (dimension != null)
+        return -1;
+    }
+
+    /**
+     * @param section one of SPAWNING, BLOCKS, ENTITIES, TILE_ENTITIES, ENTITIES_CLIENT, TILE_ENTITIES_CLIENT, VILLAGES
+     * @return id of the section in the dimension, -1 if the dimension is not profiled
+     */
+    public static int section_id(int dimension, int section)
+    {
+        if (dimension < 0)
         {
-            key = dimension+"."+name;
+            return -1;
         }
-        current_section = key;
-        current_section_start = System.nanoTime();
+        return GENERAL_SECTIONS.length + dimension * SECTIONS.length + section;
     }
 
-
-    public static class ProfilerToken
+    private static String section_name(int section)
     {
-        public String section;
-        public long start;
-        public ProfilerToken(String name, long start)
+        if (section < GENERAL_SECTIONS.length)
         {
-            this.section = name;
-            this.start = start;
+            return GENERAL_SECTIONS[section];
         }
+        return SECTIONS[(section-GENERAL_SECTIONS.length) % SECTIONS.length];
     }
 
-    public static ProfilerToken start_section_concurrent(String dimension, String name, boolean isRemote)
+    private static String section_dimension(int section)
     {
-        if (tick_health_requested == 0L || test_type != 1)
+        if (section < GENERAL_SECTIONS.length)
         {
             return null;
         }
-        if (current_tick_start == 0L)
+        return DIMENSIONS[(section-GENERAL_SECTIONS.length) / SECTIONS.length];
+    }
+
+    // section name with its dimension, for places listing sections outside of the grouped report
+    static String section_label(int section)
+    {
+        if (section < GENERAL_SECTIONS.length)
         {
-            return null;
+            return GENERAL_SECTIONS[section];
         }
+        int dim = (section-GENERAL_SECTIONS.length) / SECTIONS.length;
+        return DIMENSIONS[dim]+" "+section_name(section);
+    }
 
-        String key = name;
-        if (dimension != null)
+    /**
+     * @param section id of a general section, or of a dimension section from section_id, -1 is not measured
+     */
+    public static void start_section(int section)
+    {
+        if (!sections_measured)
         {
-            key = dimension+"."+name;
+            return;
         }
-        if (isRemote) key += "(client)";
-        long time = System.nanoTime();
-        return new ProfilerToken(key, time);
+        if (current_tick_start == 0L)
+        {
+            return;
+        }
+        Stripe s = stripe.get();
+        if (s.current_section >= 0)
+        {
+            end_current_section();
+        }
+        s.current_section = section;
+        if (flight_recorder && section >= 0)
+        {
+            s.current_section_event = CarpetProfilerEvents.begin_section(section_dimension(section), section_name(section));
+        }
+        if (allocations_measured)
+        {
+            s.current_section_bytes_start = allocated_bytes();
+        }
+        s.current_section_start = System.nanoTime();
     }
 
-    public static ProfilerToken start_entity_section(String dimension, Entity e)
+    /**
+     * Starts a section next to the current one, one at a time per thread.
+     * @return start time to be passed to the matching end call, or 0 if it is not measured
+     */
+    public static long start_section_concurrent(int section)
     {
-        if (tick_health_requested == 0L || test_type != 2)
+        if (!sections_measured)
         {
-            return null;
+            return 0L;
         }
-        if (current_tick_start == 0L)
+        if (current_tick_start == 0L || section < 0)
         {
-            return null;
+            return 0L;
         }
-        String section = dimension+"."+ IRegistry.ENTITY_TYPE.getKey(e.getType()).toString().replaceFirst("minecraft:","");
-        if (e.getEntityWorld().isRemote)
-            section += "(client)";
-        long section_start = System.nanoTime();
-        return new ProfilerToken(section, section_start);
+        Stripe s = stripe.get();
+        s.concurrent_event = flight_recorder ? CarpetProfilerEvents.begin_section(section_dimension(section), section_name(section)) : null;
+        s.concurrent_bytes_start = allocations_measured ? allocated_bytes() : 0L;
+        return System.nanoTime();
     }
 
-    public static ProfilerToken start_tileentity_section(String dimension, TileEntity e)
+    /**
+     * Starts timing of a single entity or tile entity tick.
+     * @return start time to be passed to the matching end call, or 0 if entities are not profiled
+     */
+    public static long start_entity_section()
     {
-        if (tick_health_requested == 0L || test_type != 2)
+        if (!entities_measured)
         {
-            return null;
+            return 0L;
         }
         if (current_tick_start == 0L)
         {
-            return null;
+            return 0L;
+        }
+        int sample_rate = entity_sample_rate;
+        if (sample_rate > 1)
+        {
+            Stripe s = stripe.get();
+            if (--s.sample_countdown > 0)
+            {
+                return 0L;
+            }
+            // random gaps averaging to the sample rate, so fixed entity list order doesn't alias with the stride
+            s.sample_countdown = 1+ThreadLocalRandom.current().nextInt(2*sample_rate-1);
         }
-        String section = dimension+"."+ TileEntityType.getId(e.getType()).toString().replaceFirst("minecraft:","");
-        if (e.getWorld() == null)
-            section += "??";
-        else if (e.getWorld().isRemote)
-            section += "(client)";
-        long section_start = System.nanoTime();
-        return new ProfilerToken(section, section_start);
+        if (allocations_measured)
+        {
+            stripe.get().entity_bytes_start = allocated_bytes();
+        }
+        return System.nanoTime();
     }
 
     public static void end_current_section()
     {
-        if (tick_health_requested == 0L || test_type != 1)
+        if (!sections_measured)
         {
             return;
         }
@@ -156,20 +472,34 @@ public class CarpetProfiler
         {
             return;
         }
-        if (current_section == null)
+        Stripe s = stripe.get();
+        if (s.current_section < 0)
         {
             CarpetSettings.LOG.error("finishing section that hasn't started");
             return;
         }
         //CarpetSettings.LOG.error("finishing section "+current_section);
-        time_repo.put(current_section,time_repo.get(current_section)+end_time-current_section_start);
-        current_section = null;
-        current_section_start = 0;
+        s.add(s.sections, s.current_section, end_time-s.current_section_start);
+        if (timeline_measured)
+        {
+            CarpetProfilerTimeline.section(s.current_section, s.current_section_start, end_time);
+        }
+        if (allocations_measured)
+        {
+            s.add(s.section_bytes, s.current_section, allocated_bytes()-s.current_section_bytes_start);
+        }
+        if (s.current_section_event != null)
+        {
+            CarpetProfilerEvents.end_section(s.current_section_event);
+            s.current_section_event = null;
+        }
+        s.current_section = -1;
+        s.current_section_start = 0;
     }
 
-    public static void end_current_section_concurrent(ProfilerToken tok)
+    public static void end_current_section_concurrent(int section, long start)
     {
-        if (tick_health_requested == 0L || test_type != 1)
+        if (!sections_measured)
         {
             return;
         }
@@ -178,39 +508,197 @@ public class CarpetProfiler
         {
             return;
         }
-        if (tok == null)
+        if (start == 0L)
         {
-            CarpetSettings.LOG.error("finishing section that hasn't started");
             return;
         }
-        //CarpetSettings.LOG.error("finishing section "+current_section);
-        time_repo.put(tok.section,time_repo.get(tok.section)+end_time-tok.start);
+        Stripe s = stripe.get();
+        s.add(s.sections, section, end_time-start);
+        if (timeline_measured)
+        {
+            CarpetProfilerTimeline.section(section, start, end_time);
+        }
+        if (allocations_measured && s.concurrent_bytes_start != 0L)
+        {
+            s.add(s.section_bytes, section, allocated_bytes()-s.concurrent_bytes_start);
+        }
+        if (s.concurrent_event != null)
+        {
+            CarpetProfilerEvents.end_section(s.concurrent_event);
+            s.concurrent_event = null;
+        }
     }
 
-    public static void end_current_entity_section(ProfilerToken tok)
+    /**
+     * @param dim dimension index from dimension_index
+     */
+    public static void end_current_entity_section(int dim, Entity e, long start)
     {
-        if (tick_health_requested == 0L || test_type != 2)
+        if (start == 0L)
         {
             return;
         }
         long end_time = System.nanoTime();
-        if (current_tick_start == 0L)
+        if (dim < 0)
+        {
+            return;
+        }
+        if (test_type == 3 && !e.getEntityWorld().isRemote)
+        {
+            record_chunk(dim, e.chunkCoordX, e.chunkCoordZ, (int)e.posY, end_time-start);
+        }
+        if (timeline_measured)
+        {
+            CarpetProfilerTimeline.offender(e, DIMENSIONS[dim], start, end_time);
+        }
+        if (!entity_types_measured)
+        {
+            return;
+        }
+        int type = IRegistry.ENTITY_TYPE.getId(e.getType());
+        if (type < 0 || type >= entity_type_count)
+        {
+            return;
+        }
+        int variant = e.getEntityWorld().isRemote ? 1 : 0;
+        Stripe s = stripe.get();
+        long bytes = allocations_measured ? allocated_bytes()-s.entity_bytes_start : 0L;
+        s.add_entity((dim * ENTITY_VARIANTS.length + variant) * entity_type_count + type, end_time-start, bytes);
+    }
+
+    /**
+     * @param dim dimension index from dimension_index
+     */
+    public static void end_current_tileentity_section(int dim, TileEntity e, long start)
+    {
+        if (start == 0L)
         {
             return;
         }
-        if (tok == null)
+        long end_time = System.nanoTime();
+        if (dim < 0)
         {
-            CarpetSettings.LOG.error("finishing entity/TE section that hasn't started");
             return;
         }
-        String time_section = "t."+tok.section;
-        String count_section = "c."+tok.section;
-        time_repo.put(time_section,time_repo.getOrDefault(time_section,0L)+end_time-tok.start);
-        time_repo.put(count_section,time_repo.getOrDefault(count_section,0L)+1);
+        if (test_type == 3 && e.getWorld() != null && !e.getWorld().isRemote)
+        {
+            BlockPos pos = e.getPos();
+            record_chunk(dim, pos.getX() >> 4, pos.getZ() >> 4, pos.getY(), end_time-start);
+        }
+        if (timeline_measured)
+        {
+            CarpetProfilerTimeline.offender(e, DIMENSIONS[dim], start, end_time);
+        }
+        if (!entity_types_measured)
+        {
+            return;
+        }
+        int type = IRegistry.BLOCK_ENTITY_TYPE.getId(e.getType());
+        if (type < 0 || type >= tileentity_type_count)
+        {
+            return;
+        }
+        int variant = (e.getWorld() == null) ? 2 : (e.getWorld().isRemote ? 1 : 0);
+        Stripe s = stripe.get();
+        long bytes = allocations_measured ? allocated_bytes()-s.entity_bytes_start : 0L;
+        s.add_tileentity((dim * ENTITY_VARIANTS.length + variant) * tileentity_type_count + type, end_time-start, bytes);
+    }
+
+    private static void add_scarpet_time(Map<String, long[]> target, String key, long time)
+    {
+        long [] value = target.computeIfAbsent(key, k -> new long[2]);
+        value[0] += time;
+        value[1] ++;
+    }
+
+    /**
+     * Accounts time of a single scarpet callback, always on since scripts are orders of magnitude slower than the clock.
+     * @param host app name, null for the global host
+     */
+    public static void record_scarpet_call(String host, String event, long time)
+    {
+        String name = host == null ? "global" : host;
+        add_scarpet_time(scarpet_host_totals, name, time);
+        add_scarpet_time(scarpet_event_totals, event, time);
+        if (test_type == 1)
+        {
+            add_scarpet_time(scarpet_hosts, name, time);
+        }
+    }
+
+    public static void reset_scarpet_totals(MinecraftServer server)
+    {
+        scarpet_host_totals.clear();
+        scarpet_event_totals.clear();
+        scarpet_totals_since = server.getTickCounter();
+    }
+
+    private static void scarpet_lines(List<ITextComponent> lines, Map<String, long[]> values, int ticks)
+    {
+        values.entrySet().stream().sorted(Comparator.comparingLong((Map.Entry<String, long[]> e) -> e.getValue()[0]).reversed()).forEach(e ->
+                lines.add(Messenger.c(String.format("w  - %s: %.3fms/tick, ", e.getKey(), e.getValue()[0]/1000000.0D/ticks),
+                        String.format("g %d calls, %.3fms per call", e.getValue()[1], e.getValue()[0]/1000000.0D/e.getValue()[1]))));
+    }
+
+    public static List<ITextComponent> scarpet_report(MinecraftServer server)
+    {
+        List<ITextComponent> lines = new ArrayList<>();
+        if (scarpet_host_totals.isEmpty())
+        {
+            lines.add(Messenger.c("w No scarpet callbacks run yet"));
+            return lines;
+        }
+        // tick counter restarts with each singleplayer world
+        int ticks = Math.max(1, server.getTickCounter() >= scarpet_totals_since ? server.getTickCounter()-scarpet_totals_since : server.getTickCounter());
+        lines.add(Messenger.c(String.format("w Scarpet callbacks over last %d ticks:", ticks)));
+        lines.add(Messenger.c("w By app:"));
+        scarpet_lines(lines, scarpet_host_totals, ticks);
+        lines.add(Messenger.c("w By event:"));
+        scarpet_lines(lines, scarpet_event_totals, ticks);
+        return lines;
+    }
+
+    public static boolean is_profiling()
+    {
+        return tick_health_requested != 0L || CarpetSettings.tickHealthHistory > 0 || CarpetSettings.flightRecorderProfiling
+                || CarpetSettings.slowTickTimelines > 0;
+    }
+
+    private static void record_chunk(int dim, int x, int z, int y, long time)
+    {
+        long chunk = ChunkPos.asLong(x, z);
+        chunk_times[dim].addTo(chunk, time);
+        chunk_heights[dim].put(chunk, y);
     }
 
     public static void start_tick_profiling()
     {
+        if (history_length != CarpetSettings.tickHealthHistory)
+        {
+            resize_history(CarpetSettings.tickHealthHistory);
+        }
+        flight_recorder = CarpetSettings.flightRecorderProfiling && flight_recorder_available;
+        if (flight_recorder && entity_type_count == 0)
+        {
+            register_entity_types();
+        }
+        timeline_measured = CarpetSettings.slowTickTimelines > 0;
+        sections_measured = test_type == 1 || history_length > 0 || flight_recorder || timeline_measured;
+        entity_types_measured = test_type == 2 || flight_recorder;
+        entities_measured = (tick_health_requested != 0L && test_type == 3) || entity_types_measured || timeline_measured;
+        allocations_measured = allocations_requested && tick_health_requested != 0L;
+        if (flight_recorder)
+        {
+            current_tick_event = CarpetProfilerEvents.begin_tick();
+        }
+        if (timeline_measured)
+        {
+            CarpetProfilerTimeline.begin_tick();
+        }
+        if (allocations_measured)
+        {
+            current_tick_bytes_start = allocated_bytes();
+        }
         current_tick_start = System.nanoTime();
     }
 
@@ -220,15 +708,200 @@ public class CarpetProfiler
         {
             return;
         }
-        time_repo.put("tick",time_repo.get("tick")+System.nanoTime()-current_tick_start);
+        long current_tick_time = System.nanoTime()-current_tick_start;
+        long current_tick_bytes = allocations_measured ? allocated_bytes()-current_tick_bytes_start : 0L;
+        gather_sections();
+        if (test_type == 1)
+        {
+            for (int i = 0; i < SECTION_COUNT; i++)
+            {
+                section_times[i] += tick_section_times[i];
+            }
+        }
+        if (allocations_measured)
+        {
+            gather_section_bytes();
+        }
+        if (history_length > 0)
+        {
+            record_history(current_tick_time);
+        }
+        if (entity_types_measured)
+        {
+            gather_entities(server);
+        }
+        if (flight_recorder)
+        {
+            CarpetProfilerEvents.end_tick(current_tick_event, server.getTickCounter());
+            current_tick_event = null;
+        }
+        if (timeline_measured)
+        {
+            long budget = TickSpeed.nspt/100L*CarpetSettings.slowTickBudget; // percent of the tick time in nanoseconds
+            CarpetProfilerTimeline.end_tick(server.getTickCounter(), current_tick_start, current_tick_time, budget, CarpetSettings.slowTickTimelines);
+        }
+        if (tick_health_requested == 0L)
+        {
+            if (!is_profiling()) // history, flight recorder or timelines got switched off
+            {
+                current_tick_start = 0L;
+                sections_measured = false;
+                entities_measured = false;
+                entity_types_measured = false;
+                flight_recorder = false;
+                timeline_measured = false;
+            }
+            return;
+        }
+        tick_time += current_tick_time;
+        tick_bytes += current_tick_bytes;
         tick_health_elapsed --;
-        //CarpetSettings.LOG.error("tick count current at "+time_repo.get("tick"));
+        //CarpetSettings.LOG.error("tick count current at "+tick_time);
         if (tick_health_elapsed <= 0)
         {
             finalize_tick_report(server);
         }
     }
 
+    // sums all stripes and turns the difference to the previous tick into this tick's section times
+    private static void gather_sections()
+    {
+        long [] totals = section_totals;
+        Arrays.fill(totals, 0L);
+        for (Stripe s : stripes)
+        {
+            for (int i = 0; i < SECTION_COUNT; i++)
+            {
+                totals[i] += s.sections.get(i);
+            }
+        }
+        for (int i = 0; i < SECTION_COUNT; i++)
+        {
+            tick_section_times[i] = totals[i]-last_section_totals[i];
+            last_section_totals[i] = totals[i];
+        }
+    }
+
+    private static void gather_section_bytes()
+    {
+        long [] totals = section_totals;
+        Arrays.fill(totals, 0L);
+        for (Stripe s : stripes)
+        {
+            for (int i = 0; i < SECTION_COUNT; i++)
+            {
+                totals[i] += s.section_bytes.get(i);
+            }
+        }
+        for (int i = 0; i < SECTION_COUNT; i++)
+        {
+            section_bytes[i] += totals[i]-last_section_bytes[i];
+            last_section_bytes[i] = totals[i];
+        }
+    }
+
+    private static void gather_entities(MinecraftServer server)
+    {
+        if (last_entity_times.length != entity_slots || last_tileentity_times.length != tileentity_slots)
+        {
+            last_entity_times = new long[entity_slots];
+            last_entity_counts = new long[entity_slots];
+            last_tileentity_times = new long[tileentity_slots];
+            last_tileentity_counts = new long[tileentity_slots];
+            last_entity_bytes = new long[entity_slots];
+            last_tileentity_bytes = new long[tileentity_slots];
+        }
+        int size = Math.max(entity_slots, tileentity_slots);
+        if (gathered_times.length != size)
+        {
+            gathered_times = new long[size];
+            gathered_counts = new long[size];
+            gathered_bytes = new long[size];
+        }
+        boolean emit = flight_recorder && CarpetProfilerEvents.entity_types_enabled();
+        Arrays.fill(gathered_times, 0L);
+        Arrays.fill(gathered_counts, 0L);
+        Arrays.fill(gathered_bytes, 0L);
+        for (Stripe s : stripes)
+        {
+            sum_stripe(gathered_times, s.entity_times, entity_slots);
+            sum_stripe(gathered_counts, s.entity_counts, entity_slots);
+            sum_stripe(gathered_bytes, s.entity_bytes, entity_slots);
+        }
+        to_deltas(gathered_times, last_entity_times);
+        to_deltas(gathered_counts, last_entity_counts);
+        to_deltas(gathered_bytes, last_entity_bytes);
+        gather_entity_types(emit, entity_times, entity_counts, entity_bytes, entity_names, entity_type_count, entity_slots);
+        Arrays.fill(gathered_times, 0L);
+        Arrays.fill(gathered_counts, 0L);
+        Arrays.fill(gathered_bytes, 0L);
+        for (Stripe s : stripes)
+        {
+            sum_stripe(gathered_times, s.tileentity_times, tileentity_slots);
+            sum_stripe(gathered_counts, s.tileentity_counts, tileentity_slots);
+            sum_stripe(gathered_bytes, s.tileentity_bytes, tileentity_slots);
+        }
+        to_deltas(gathered_times, last_tileentity_times);
+        to_deltas(gathered_counts, last_tileentity_counts);
+        to_deltas(gathered_bytes, last_tileentity_bytes);
+        gather_entity_types(emit, tileentity_times, tileentity_counts, tileentity_bytes, tileentity_names, tileentity_type_count, tileentity_slots);
+    }
+
+    // turns summed stripe totals into differences to the previous tick, in place
+    private static void to_deltas(long [] totals, long [] last)
+    {
+        for (int i = 0; i < last.length; i++)
+        {
+            // totals can only drop if a stripe got reallocated, then whatever is there is new
+            long delta = totals[i] >= last[i] ? totals[i]-last[i] : totals[i];
+            last[i] = totals[i];
+            totals[i] = delta;
+        }
+    }
+
+    private static void sum_stripe(long [] target, AtomicLongArray values, int length)
+    {
+        if (values.length() != length) // stripe not used or not resized yet
+        {
+            return;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            target[i] += values.get(i);
+        }
+    }
+
+    // folds what the stripes gained since the previous tick into the report and flight recorder
+    private static void gather_entity_types(boolean emit, long [] report_times, long [] report_counts, long [] report_bytes,
+                                            String [] names, int type_count, int slots)
+    {
+        boolean report = test_type == 2 && report_times.length == slots;
+        for (int index = 0; index < slots; index++)
+        {
+            long time = gathered_times[index];
+            long count = gathered_counts[index];
+            if (time == 0L && count == 0L)
+            {
+                continue;
+            }
+            if (report)
+            {
+                report_times[index] += time;
+                report_counts[index] += count;
+                report_bytes[index] += gathered_bytes[index];
+            }
+            if (emit && names[index % type_count] != null)
+            {
+                int slot = index / type_count;
+                CarpetProfilerEvents.entity_type(
+                        DIMENSIONS[slot / ENTITY_VARIANTS.length],
+                        names[index % type_count]+ENTITY_VARIANTS[slot % ENTITY_VARIANTS.length],
+                        count*entity_sample_rate,
+                        time*entity_sample_rate);
+            }
+        }
+    }
+
     public static void finalize_tick_report(MinecraftServer server)
     {
         if (test_type == 1)
@@ -239,46 +912,168 @@ public class CarpetProfiler
         {
             finalize_tick_report_for_entities(server);
         }
+        if (test_type == 3)
+        {
+            finalize_tick_report_for_chunks(server);
+        }
         cleanup_tick_report();
     }
 
     public static void cleanup_tick_report()
     {
-        time_repo.clear();
-        time_repo.put("tick",0L);
+        clear_accumulators();
         test_type = 0;
         tick_health_elapsed = 0;
         tick_health_requested = 0;
         current_tick_start = 0L;
-        current_section_start = 0L;
-        current_section = null;
+        reset_current_section();
+        entity_sample_rate = 1;
+        allocations_requested = false;
+        allocations_measured = false;
+
+    }
+
+    private static void resize_history(int ticks)
+    {
+        history_length = Math.max(ticks, 0);
+        history = new long[SECTION_COUNT+1][history_length];
+        history_pos = 0;
+        history_filled = 0;
+    }
 
+    private static void record_history(long current_tick_time)
+    {
+        for (int i = 0; i < SECTION_COUNT; i++)
+        {
+            history[i][history_pos] = tick_section_times[i];
+        }
+        history[SECTION_COUNT][history_pos] = current_tick_time;
+        history_pos = (history_pos+1) % history_length;
+        if (history_filled < history_length)
+        {
+            history_filled++;
+        }
+    }
+
+    // nearest rank percentile of the already sorted samples
+    private static long percentile(long [] sorted, double fraction)
+    {
+        int rank = (int)Math.ceil(fraction*sorted.length);
+        return sorted[Math.min(Math.max(rank-1, 0), sorted.length-1)];
+    }
+
+    private static ITextComponent history_line(String style, String name, long [] samples)
+    {
+        long [] sorted = Arrays.copyOf(samples, history_filled);
+        Arrays.sort(sorted);
+        double divider = 1.0D/1000000;
+        return Messenger.c(style+" "+name+": ",
+                String.format("w p50 %.3f",divider*percentile(sorted, 0.5)),
+                String.format("g , p90 %.3f",divider*percentile(sorted, 0.9)),
+                String.format("y , p99 %.3f",divider*percentile(sorted, 0.99)),
+                String.format("r , max %.3f",divider*sorted[sorted.length-1]),
+                "g  ms");
+    }
+
+    private static boolean any_above(long [] samples, long threshold)
+    {
+        for (int i = 0; i < history_filled; i++)
+        {
+            if (samples[i] > threshold)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static List<ITextComponent> history_report()
+    {
+        List<ITextComponent> lines = new ArrayList<>();
+        if (history_length == 0)
+        {
+            lines.add(Messenger.c("r Rolling tick history is disabled, set tickHealthHistory rule to enable it"));
+            return lines;
+        }
+        if (history_filled == 0)
+        {
+            lines.add(Messenger.c("w No ticks recorded yet"));
+            return lines;
+        }
+        long threshold = 10000L; // 0.01ms, same cutoff as the sampled report
+        lines.add(Messenger.c(String.format("w Tick percentiles over last %d ticks:", history_filled)));
+        lines.add(history_line("wb", "Tick", history[SECTION_COUNT]));
+        for (int i = 0; i < GENERAL_SECTIONS.length; i++)
+        {
+            if (any_above(history[i], threshold))
+            {
+                lines.add(history_line("w", GENERAL_SECTIONS[i], history[i]));
+            }
+        }
+        for (int dim = 0; dim < DIMENSIONS.length; dim++)
+        {
+            int base = GENERAL_SECTIONS.length + dim * SECTIONS.length;
+            boolean header = false;
+            for (int i = 0; i < SECTIONS.length; i++)
+            {
+                if (!any_above(history[base+i], threshold))
+                {
+                    continue;
+                }
+                if (!header)
+                {
+                    lines.add(Messenger.c("w "+DIMENSIONS[dim]+":"));
+                    header = true;
+                }
+                lines.add(history_line("g", " - "+SECTIONS[i], history[base+i]));
+            }
+        }
+        return lines;
     }
 
     public static void finalize_tick_report_for_time(MinecraftServer server)
     {
         //print stats
-        long total_tick_time = time_repo.get("tick");
+        long total_tick_time = tick_time;
         double divider = 1.0D/tick_health_requested/1000000;
         Messenger.print_server_message(server, String.format("Average tick time: %.3fms",divider*total_tick_time));
+        if (allocations_measured)
+        {
+            Messenger.print_server_message(server, "Average tick allocations: "+format_bytes(1.0D*tick_bytes/tick_health_requested));
+        }
         long accumulated = 0L;
 
-        for (String section: GENERAL_SECTIONS)
+        for (int id = 0; id < GENERAL_SECTIONS.length; id++)
         {
-            double amount = divider*time_repo.get(section);
+            String section = GENERAL_SECTIONS[id];
+            long time = section_times[id];
+            double amount = divider*time;
             if (amount > 0.01)
             {
-                accumulated += time_repo.get(section);
-                Messenger.print_server_message(server, String.format("%s: %.3fms", section, amount));
+                accumulated += time;
+                Messenger.print_server_message(server, String.format("%s: %.3fms", section, amount)+allocation_suffix(section_bytes[id]));
+            }
+            if (section.equals("Scarpet"))
+            {
+                // callbacks from player events run within other sections, so apps can add up to more than the section
+                scarpet_hosts.entrySet().stream().sorted(Comparator.comparingLong((Map.Entry<String, long[]> e) -> e.getValue()[0]).reversed()).forEach(e ->
+                {
+                    double host_amount = divider*e.getValue()[0];
+                    if (host_amount > 0.01)
+                    {
+                        Messenger.print_server_message(server, String.format(" - %s: %.3fms", e.getKey(), host_amount));
+                    }
+                });
             }
         }
 
-        for (String dimension: DIMENSIONS)
+        for (int dim = 0; dim < DIMENSIONS.length; dim++)
         {
+            int base = GENERAL_SECTIONS.length + dim * SECTIONS.length;
             boolean hasSomethin = false;
-            for (String section: SECTIONS)
+            for (int i = 0; i < SECTIONS.length; i++)
             {
-                double amount = divider*time_repo.get(dimension+"."+section);
+                double amount = divider*section_times[base+i];
                 if (amount > 0.01)
                 {
                     hasSomethin = true;
@@ -289,15 +1084,25 @@ public class CarpetProfiler
             {
                 continue;
             }
-            Messenger.print_server_message(server, dimension+":");
-            for (String section: SECTIONS)
+            if (TickSpeed.dimension_tickrates().containsKey(DIMENSION_TYPES[dim]))
             {
-                double amount = divider*time_repo.get(dimension+"."+section);
+                double server_tps = Math.min(1000.0D/Math.max(divider*total_tick_time, 0.001D), TickSpeed.tickrate);
+                Messenger.print_server_message(server, String.format("%s (%.1f tps):", DIMENSIONS[dim],
+                        TickSpeed.dimension_tps(DIMENSION_TYPES[dim], server_tps)));
+            }
+            else
+            {
+                Messenger.print_server_message(server, DIMENSIONS[dim]+":");
+            }
+            for (int i = 0; i < SECTIONS.length; i++)
+            {
+                String section = SECTIONS[i];
+                double amount = divider*section_times[base+i];
                 if (amount > 0.01)
                 {
                     if (!(section.endsWith("(client)")))
-                        accumulated += time_repo.get(dimension+"."+section);
-                    Messenger.print_server_message(server, String.format(" - %s: %.3fms", section, amount));
+                        accumulated += section_times[base+i];
+                    Messenger.print_server_message(server, String.format(" - %s: %.3fms", section, amount)+allocation_suffix(section_bytes[base+i]));
                 }
             }
         }
@@ -305,68 +1110,272 @@ public class CarpetProfiler
         long rest = total_tick_time-accumulated;
 
         Messenger.print_server_message(server, String.format("The Rest, whatever that might be: %.3fms",divider*rest));
+
+        if (CarpetProfilerExport.enabled())
+        {
+            CarpetProfilerExport export = new CarpetProfilerExport("tick_health", tick_health_requested, "dimension", "section", "ms", "bytes");
+            export.row("", "Tick", divider*total_tick_time, 1.0D*tick_bytes/tick_health_requested);
+            for (int i = 0; i < SECTION_COUNT; i++)
+            {
+                if (section_times[i] != 0L)
+                {
+                    String dimension = i < GENERAL_SECTIONS.length ? "" : DIMENSIONS[(i-GENERAL_SECTIONS.length) / SECTIONS.length];
+                    export.row(dimension, section_name(i), divider*section_times[i], 1.0D*section_bytes[i]/tick_health_requested);
+                }
+            }
+            export.row("", "The Rest", divider*rest, 0L);
+            export.submit(server);
+        }
+    }
+
+    private static String format_bytes(double bytes)
+    {
+        if (bytes >= 1024.0D*1024.0D)
+        {
+            return String.format("%.2fMB", bytes/(1024.0D*1024.0D));
+        }
+        if (bytes >= 1024.0D)
+        {
+            return String.format("%.1fkB", bytes/1024.0D);
+        }
+        return String.format("%.0fB", bytes);
+    }
+
+    // per tick allocations appended to report lines, empty if allocations are not tracked
+    private static String allocation_suffix(long bytes)
+    {
+        if (!allocations_measured)
+        {
+            return "";
+        }
+        return ", "+format_bytes(1.0D*bytes/tick_health_requested);
+    }
+
+    // collects non-empty accumulator slots into "dimension.name" keys, only used when printing reports
+    private static void collect_entity_values(Map<String, Long> target, long [] values, String [] names, int type_count)
+    {
+        for (int index = 0; index < values.length; index++)
+        {
+            if (values[index] == 0L || names[index % type_count] == null)
+            {
+                continue;
+            }
+            int slot = index / type_count;
+            String key = DIMENSIONS[slot / ENTITY_VARIANTS.length]+"."+names[index % type_count]+ENTITY_VARIANTS[slot % ENTITY_VARIANTS.length];
+            target.put(key, target.getOrDefault(key, 0L)+values[index]*entity_sample_rate);
+        }
     }
 
     public static void finalize_tick_report_for_entities(MinecraftServer server)
     {
         //print stats
-        long total_tick_time = time_repo.get("tick");
+        long total_tick_time = tick_time;
         double divider = 1.0D/tick_health_requested/1000000;
-        double divider_1 = 1.0D/(tick_health_requested-1)/1000000;
+        double divider_1 = 1.0D/Math.max(1, tick_health_requested-1)/1000000;
         Messenger.print_server_message(server, String.format("Average tick time: %.3fms",divider*total_tick_time));
-        time_repo.remove("tick");
+        if (entity_sample_rate > 1)
+        {
+            Messenger.print_server_message(server, String.format("Sampled 1 in %d entities, values are extrapolated", entity_sample_rate));
+        }
+        Map<String, Long> counts = new HashMap<>();
+        collect_entity_values(counts, entity_counts, entity_names, entity_type_count);
+        collect_entity_values(counts, tileentity_counts, tileentity_names, tileentity_type_count);
+        Map<String, Long> times = new HashMap<>();
+        collect_entity_values(times, entity_times, entity_names, entity_type_count);
+        collect_entity_values(times, tileentity_times, tileentity_names, tileentity_type_count);
         Messenger.print_server_message(server, "Top 10 counts:");
         int total = 0;
-        for ( Map.Entry<String, Long> entry : time_repo.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList()) )
+        for ( Map.Entry<String, Long> entry : counts.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList()) )
         {
-            if (entry.getKey().startsWith("t."))
-            {
-                continue;
-            }
             total++;
             if (total > 10)
             {
                 continue;
             }
             String[] parts = entry.getKey().split("\\.");
-            String dim = parts[1];
-            String name = parts[2];
+            String dim = parts[0];
+            String name = parts[1];
             int penalty = name.endsWith("(client)") ? 1 :0;
-            Messenger.print_server_message(server, String.format(" - %s in %s: %.3f",name, dim, 1.0D*entry.getValue()/(tick_health_requested-penalty)));
+            Messenger.print_server_message(server, String.format(" - %s in %s: %.3f",name, dim, 1.0D*entry.getValue()/Math.max(1, tick_health_requested-penalty)));
         }
         Messenger.print_server_message(server, "Top 10 grossing:");
         total = 0;
-        for ( Map.Entry<String, Long> entry : time_repo.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList()) )
+        for ( Map.Entry<String, Long> entry : times.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList()) )
         {
-            if (entry.getKey().startsWith("c."))
+            total++;
+            if (total > 10)
             {
                 continue;
             }
+            String[] parts = entry.getKey().split("\\.");
+            String dim = parts[0];
+            String name = parts[1];
+            double applicableDivider = name.endsWith("(client)") ? divider :divider_1;
+            Messenger.print_server_message(server, String.format(" - %s in %s: %.3fms",name, dim, applicableDivider*entry.getValue()));
+        }
+        if (CarpetProfilerExport.enabled())
+        {
+            CarpetProfilerExport export = new CarpetProfilerExport("tick_entities", tick_health_requested, "dimension", "type", "count", "ms", "bytes");
+            export_entity_types(export, entity_counts, entity_times, entity_bytes, entity_names, entity_type_count);
+            export_entity_types(export, tileentity_counts, tileentity_times, tileentity_bytes, tileentity_names, tileentity_type_count);
+            export.submit(server);
+        }
+        if (!allocations_measured)
+        {
+            return;
+        }
+        Map<String, Long> allocations = new HashMap<>();
+        collect_entity_values(allocations, entity_bytes, entity_names, entity_type_count);
+        collect_entity_values(allocations, tileentity_bytes, tileentity_names, tileentity_type_count);
+        Messenger.print_server_message(server, "Top 10 allocating:");
+        total = 0;
+        for ( Map.Entry<String, Long> entry : allocations.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList()) )
+        {
             total++;
             if (total > 10)
             {
                 continue;
             }
             String[] parts = entry.getKey().split("\\.");
-            String dim = parts[1];
-            String name = parts[2];
-            double applicableDivider = name.endsWith("(client)") ? divider :divider_1;
-            Messenger.print_server_message(server, String.format(" - %s in %s: %.3fms",name, dim, applicableDivider*entry.getValue()));
+            String dim = parts[0];
+            String name = parts[1];
+            int penalty = name.endsWith("(client)") ? 0 : 1;
+            Messenger.print_server_message(server, String.format(" - %s in %s: %s", name, dim, format_bytes(1.0D*entry.getValue()/Math.max(1, tick_health_requested-penalty))));
+        }
+    }
+
+    // same averaging as the chat report: server side entities skip the first, partially measured tick
+    private static void export_entity_types(CarpetProfilerExport export, long [] counts, long [] times, long [] bytes, String [] names, int type_count)
+    {
+        for (int index = 0; index < counts.length; index++)
+        {
+            if ((counts[index] == 0L && times[index] == 0L) || names[index % type_count] == null)
+            {
+                continue;
+            }
+            int slot = index / type_count;
+            int variant = slot % ENTITY_VARIANTS.length;
+            int count_ticks = Math.max(1, tick_health_requested - (variant == 1 ? 1 : 0));
+            int time_ticks = Math.max(1, variant == 1 ? tick_health_requested : tick_health_requested-1);
+            export.row(
+                    DIMENSIONS[slot / ENTITY_VARIANTS.length],
+                    names[index % type_count]+ENTITY_VARIANTS[variant],
+                    1.0D*counts[index]*entity_sample_rate/count_ticks,
+                    1.0D*times[index]*entity_sample_rate/time_ticks/1000000,
+                    1.0D*bytes[index]*entity_sample_rate/time_ticks);
+        }
+    }
+
+    private static class ChunkEntry
+    {
+        final int dim;
+        final long chunk;
+        final long time;
+        ChunkEntry(int dim, long chunk, long time)
+        {
+            this.dim = dim;
+            this.chunk = chunk;
+            this.time = time;
         }
+    }
+
+    public static void finalize_tick_report_for_chunks(MinecraftServer server)
+    {
+        //print stats
+        long total_tick_time = tick_time;
+        double divider = 1.0D/tick_health_requested/1000000;
+        Messenger.print_server_message(server, String.format("Average tick time: %.3fms",divider*total_tick_time));
+        List<ChunkEntry> entries = new ArrayList<>();
+        for (int dim = 0; dim < DIMENSIONS.length; dim++)
+        {
+            for (Long2LongMap.Entry entry : chunk_times[dim].long2LongEntrySet())
+            {
+                entries.add(new ChunkEntry(dim, entry.getLongKey(), entry.getLongValue()));
+            }
+        }
+        entries.sort(Comparator.comparingLong((ChunkEntry e) -> e.time).reversed());
+        Messenger.print_server_message(server, "Top 10 chunks:");
+        for (ChunkEntry entry : entries.subList(0, Math.min(10, entries.size())))
+        {
+            int x = (int)entry.chunk; // unpacking ChunkPos.asLong
+            int z = (int)(entry.chunk >>> 32);
+            Messenger.print_server_message(server, Messenger.c(
+                    "w  - ",
+                    Messenger.tp("c", x*16+8, chunk_heights[entry.dim].get(entry.chunk), z*16+8),
+                    String.format("w  in %s: %.3fms", DIMENSIONS[entry.dim], divider*entry.time)
+            ));
+        }
+    }
+
+    static String short_name(ResourceLocation id)
+    {
+        return id == null ? null : id.toString().replaceFirst("minecraft:","");
+    }
+
+    // registries are not expected to change between reports, but are re-read each time so the arrays always fit
+    private static void register_entity_types()
+    {
+        int max_entity = 0;
+        for (EntityType<?> type : IRegistry.ENTITY_TYPE)
+        {
+            max_entity = Math.max(max_entity, IRegistry.ENTITY_TYPE.getId(type)+1);
+        }
+        entity_type_count = max_entity;
+        entity_names = new String[max_entity];
+        for (EntityType<?> type : IRegistry.ENTITY_TYPE)
+        {
+            entity_names[IRegistry.ENTITY_TYPE.getId(type)] = short_name(IRegistry.ENTITY_TYPE.getKey(type));
+        }
+
+        int max_tileentity = 0;
+        for (TileEntityType<?> type : IRegistry.BLOCK_ENTITY_TYPE)
+        {
+            max_tileentity = Math.max(max_tileentity, IRegistry.BLOCK_ENTITY_TYPE.getId(type)+1);
+        }
+        tileentity_type_count = max_tileentity;
+        tileentity_names = new String[max_tileentity];
+        for (TileEntityType<?> type : IRegistry.BLOCK_ENTITY_TYPE)
+        {
+            tileentity_names[IRegistry.BLOCK_ENTITY_TYPE.getId(type)] = short_name(TileEntityType.getId(type));
+        }
+
+        int slots = DIMENSIONS.length * ENTITY_VARIANTS.length;
+        entity_times = new long[slots * entity_type_count];
+        entity_counts = new long[slots * entity_type_count];
+        entity_bytes = new long[slots * entity_type_count];
+        tileentity_times = new long[slots * tileentity_type_count];
+        tileentity_counts = new long[slots * tileentity_type_count];
+        tileentity_bytes = new long[slots * tileentity_type_count];
+        // stripes pick up new sizes on their next write
+        entity_slots = slots * entity_type_count;
+        tileentity_slots = slots * tileentity_type_count;
+    }
+
+    public static void prepare_chunk_report(int ticks)
+    {
+        clear_accumulators();
+        request_allocations(false);
+        entity_sample_rate = 1;
+        test_type = 3;
+        tick_health_elapsed = ticks;
+        tick_health_requested = ticks;
+        current_tick_start = 0L;
+        reset_current_section();
 
     }
 
-    public static void prepare_entity_report(int ticks)
+    public static void prepare_entity_report(int ticks, int sample_rate, boolean allocations)
     {
         //maybe add so it only spams the sending player, but honestly - all may want to see it
-        time_repo.clear();
-        time_repo.put("tick",0L);
+        register_entity_types();
+        clear_accumulators();
+        request_allocations(allocations);
+        entity_sample_rate = Math.max(sample_rate, 1);
         test_type = 2;
         tick_health_elapsed = ticks;
         tick_health_requested = ticks;
         current_tick_start = 0L;
-        current_section_start = 0L;
-        current_section = null;
+        reset_current_section();
 
     }
 }
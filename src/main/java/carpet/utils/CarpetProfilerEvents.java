@@ -0,0 +1,122 @@
+package carpet.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events mirroring CarpetProfiler measurements.
+ * Only referenced from CarpetProfiler after checking that the JVM ships jdk.jfr,
+ * events are passed around as plain Objects so the profiler loads without it.
+ */
+public class CarpetProfilerEvents
+{
+    @Name("carpet.Tick")
+    @Label("Server Tick")
+    @Category({"Minecraft", "Carpet"})
+    @Description("Single server tick as measured by carpet profiler")
+    @StackTrace(false)
+    public static class TickEvent extends Event
+    {
+        @Label("Tick")
+        public int tick;
+    }
+
+    @Name("carpet.TickSection")
+    @Label("Tick Section")
+    @Category({"Minecraft", "Carpet"})
+    @Description("Part of the server tick, like Network, Autosave or dimension Entities")
+    @StackTrace(false)
+    public static class TickSectionEvent extends Event
+    {
+        @Label("Dimension")
+        public String dimension;
+        @Label("Section")
+        public String section;
+    }
+
+    @Name("carpet.EntityTypeTick")
+    @Label("Entity Type Tick")
+    @Category({"Minecraft", "Carpet"})
+    @Description("Time spent ticking all entities or tile entities of one type in a dimension during one tick")
+    @StackTrace(false)
+    public static class EntityTypeEvent extends Event
+    {
+        @Label("Dimension")
+        public String dimension;
+        @Label("Type")
+        public String type;
+        @Label("Count")
+        public long count;
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long time;
+    }
+
+    private static final EventType TICK = EventType.getEventType(TickEvent.class);
+    private static final EventType SECTION = EventType.getEventType(TickSectionEvent.class);
+    private static final EventType ENTITY_TYPE = EventType.getEventType(EntityTypeEvent.class);
+
+    public static Object begin_tick()
+    {
+        if (!TICK.isEnabled())
+        {
+            return null;
+        }
+        TickEvent event = new TickEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void end_tick(Object event, int tick)
+    {
+        if (event == null)
+        {
+            return;
+        }
+        TickEvent tickEvent = (TickEvent) event;
+        tickEvent.tick = tick;
+        tickEvent.commit();
+    }
+
+    public static Object begin_section(String dimension, String section)
+    {
+        if (!SECTION.isEnabled())
+        {
+            return null;
+        }
+        TickSectionEvent event = new TickSectionEvent();
+        event.dimension = dimension;
+        event.section = section;
+        event.begin();
+        return event;
+    }
+
+    public static void end_section(Object event)
+    {
+        if (event != null)
+        {
+            ((TickSectionEvent) event).commit();
+        }
+    }
+
+    public static boolean entity_types_enabled()
+    {
+        return ENTITY_TYPE.isEnabled();
+    }
+
+    public static void entity_type(String dimension, String type, long count, long time)
+    {
+        EntityTypeEvent event = new EntityTypeEvent();
+        event.dimension = dimension;
+        event.type = type;
+        event.count = count;
+        event.time = time;
+        event.commit();
+    }
+}
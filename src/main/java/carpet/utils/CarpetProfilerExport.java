@@ -0,0 +1,151 @@
+package carpet.utils;
+
+import carpet.settings.CarpetSettings;
+import com.google.gson.JsonObject;
+import net.minecraft.server.MinecraftServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Appends finished profiler reports to files in the world's profiler folder.
+ * Rows are collected on the server thread, formatting and disk access happen on a separate writer thread.
+ */
+public class CarpetProfilerExport
+{
+    public enum Format
+    {
+        NONE, CSV, JSON
+    }
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "Carpet Profiler Export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String report;
+    private final int ticks;
+    private final String [] columns;
+    private final List<Object []> rows = new ArrayList<>();
+
+    /**
+     * @param report file name without extension
+     * @param ticks length of the sample window, stored in each row
+     * @param columns names of the values passed to {@link #row}
+     */
+    public CarpetProfilerExport(String report, int ticks, String ... columns)
+    {
+        this.report = report;
+        this.ticks = ticks;
+        this.columns = columns;
+    }
+
+    public static boolean enabled()
+    {
+        return CarpetSettings.tickHealthExport != Format.NONE;
+    }
+
+    public CarpetProfilerExport row(Object ... values)
+    {
+        rows.add(values);
+        return this;
+    }
+
+    public void submit(MinecraftServer server)
+    {
+        Format format = CarpetSettings.tickHealthExport;
+        if (format == Format.NONE || rows.isEmpty())
+        {
+            return;
+        }
+        File folder = server.getActiveAnvilConverter().getFile(server.getFolderName(), "profiler");
+        File file = new File(folder, report+(format == Format.CSV ? ".csv" : ".jsonl"));
+        String time = Instant.now().toString();
+        writer.execute(() -> write(folder, file, format, time));
+    }
+
+    private void write(File folder, File file, Format format, String time)
+    {
+        try
+        {
+            if (!folder.exists() && !folder.mkdirs())
+            {
+                throw new IOException("Cannot create "+folder);
+            }
+            boolean header = format == Format.CSV && !file.exists();
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+            {
+                if (header)
+                {
+                    out.write("time,ticks,"+String.join(",", columns));
+                    out.newLine();
+                }
+                for (Object [] values : rows)
+                {
+                    out.write(format == Format.CSV ? csv_line(time, values) : json_line(time, values));
+                    out.newLine();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetSettings.LOG.error("Failed to export profiler report to "+file, e);
+        }
+    }
+
+    private String csv_line(String time, Object [] values)
+    {
+        StringBuilder line = new StringBuilder(time).append(',').append(ticks);
+        for (Object value : values)
+        {
+            line.append(',').append(csv_value(value));
+        }
+        return line.toString();
+    }
+
+    private static String csv_value(Object value)
+    {
+        if (value instanceof Double)
+        {
+            return String.format(Locale.ROOT, "%.6f", (Double) value);
+        }
+        String string = String.valueOf(value);
+        if (string.contains(",") || string.contains("\""))
+        {
+            return "\""+string.replace("\"", "\"\"")+"\"";
+        }
+        return string;
+    }
+
+    private String json_line(String time, Object [] values)
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("time", time);
+        json.addProperty("ticks", ticks);
+        for (int i = 0; i < columns.length && i < values.length; i++)
+        {
+            if (values[i] instanceof Number)
+            {
+                json.addProperty(columns[i], (Number) values[i]);
+            }
+            else
+            {
+                json.addProperty(columns[i], String.valueOf(values[i]));
+            }
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,271 @@
+package carpet.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.minecraft.entity.Entity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.tileentity.TileEntityType;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.IRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ordered section timeline of the current tick, kept only for ticks that went over the budget.
+ * Filled from the server thread only, sections from other threads are left out.
+ */
+public class CarpetProfilerTimeline
+{
+    private static final int OFFENDERS = 10;
+
+    private static Thread owner = null;
+    private static int [] sections = new int[64];
+    private static long [] starts = new long[64];
+    private static long [] ends = new long[64];
+    private static int size = 0;
+    // slowest single entity and tile entity ticks, resolved to names only if the tick gets kept
+    private static final Object [] offenders = new Object[OFFENDERS];
+    private static final String [] offender_dimensions = new String[OFFENDERS];
+    private static final long [] offender_starts = new long[OFFENDERS];
+    private static final long [] offender_ends = new long[OFFENDERS];
+    private static int offender_count = 0;
+    private static long offender_min = 0L;
+
+    private static final List<Capture> captures = new ArrayList<>();
+
+    private static class Capture
+    {
+        final int tick;
+        final long start;
+        final long duration;
+        final int [] sections;
+        final long [] starts;
+        final long [] ends;
+        final String [] offenders;
+        final long [] offender_starts;
+        final long [] offender_ends;
+
+        Capture(int tick, long start, long duration)
+        {
+            this.tick = tick;
+            this.start = start;
+            this.duration = duration;
+            this.sections = Arrays.copyOf(CarpetProfilerTimeline.sections, size);
+            this.starts = Arrays.copyOf(CarpetProfilerTimeline.starts, size);
+            this.ends = Arrays.copyOf(CarpetProfilerTimeline.ends, size);
+            this.offenders = new String[offender_count];
+            for (int i = 0; i < offender_count; i++)
+            {
+                offenders[i] = offender_name(CarpetProfilerTimeline.offenders[i])+" in "+offender_dimensions[i];
+            }
+            this.offender_starts = Arrays.copyOf(CarpetProfilerTimeline.offender_starts, offender_count);
+            this.offender_ends = Arrays.copyOf(CarpetProfilerTimeline.offender_ends, offender_count);
+        }
+    }
+
+    public static void begin_tick()
+    {
+        owner = Thread.currentThread();
+        size = 0;
+        offender_count = 0;
+        offender_min = 0L;
+    }
+
+    static void section(int section, long start, long end)
+    {
+        if (Thread.currentThread() != owner)
+        {
+            return;
+        }
+        if (size == sections.length)
+        {
+            sections = Arrays.copyOf(sections, size*2);
+            starts = Arrays.copyOf(starts, size*2);
+            ends = Arrays.copyOf(ends, size*2);
+        }
+        sections[size] = section;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    static void offender(Object object, String dimension, long start, long end)
+    {
+        if (Thread.currentThread() != owner)
+        {
+            return;
+        }
+        long time = end-start;
+        int slot;
+        if (offender_count < OFFENDERS)
+        {
+            slot = offender_count++;
+        }
+        else if (time > offender_min)
+        {
+            slot = 0;
+            for (int i = 1; i < OFFENDERS; i++)
+            {
+                if (offender_ends[i]-offender_starts[i] < offender_ends[slot]-offender_starts[slot])
+                {
+                    slot = i;
+                }
+            }
+        }
+        else
+        {
+            return;
+        }
+        offenders[slot] = object;
+        offender_dimensions[slot] = dimension;
+        offender_starts[slot] = start;
+        offender_ends[slot] = end;
+        if (offender_count == OFFENDERS)
+        {
+            offender_min = Long.MAX_VALUE;
+            for (int i = 0; i < OFFENDERS; i++)
+            {
+                offender_min = Math.min(offender_min, offender_ends[i]-offender_starts[i]);
+            }
+        }
+    }
+
+    /**
+     * Keeps the finished tick if it took longer than the budget and is among the slowest kept ticks.
+     */
+    public static void end_tick(int tick, long start, long duration, long budget, int keep)
+    {
+        if (duration > budget && keep > 0)
+        {
+            if (captures.size() < keep || duration > captures.get(captures.size()-1).duration)
+            {
+                captures.add(new Capture(tick, start, duration));
+                captures.sort(Comparator.comparingLong((Capture c) -> c.duration).reversed());
+            }
+        }
+        while (captures.size() > keep)
+        {
+            captures.remove(captures.size()-1);
+        }
+        Arrays.fill(offenders, null);
+        offender_count = 0;
+    }
+
+    public static void clear()
+    {
+        captures.clear();
+    }
+
+    private static String offender_name(Object object)
+    {
+        if (object instanceof Entity)
+        {
+            Entity e = (Entity) object;
+            String name = CarpetProfiler.short_name(IRegistry.ENTITY_TYPE.getKey(e.getType()));
+            return String.format("%s [%d, %d, %d]", name, (int)e.posX, (int)e.posY, (int)e.posZ);
+        }
+        if (object instanceof TileEntity)
+        {
+            TileEntity e = (TileEntity) object;
+            String name = CarpetProfiler.short_name(TileEntityType.getId(e.getType()));
+            BlockPos pos = e.getPos();
+            return String.format("%s [%d, %d, %d]", name, pos.getX(), pos.getY(), pos.getZ());
+        }
+        return "?";
+    }
+
+    public static List<String> summary()
+    {
+        List<String> lines = new ArrayList<>();
+        for (Capture capture : captures)
+        {
+            int worst = -1;
+            for (int i = 0; i < capture.sections.length; i++)
+            {
+                if (worst < 0 || capture.ends[i]-capture.starts[i] > capture.ends[worst]-capture.starts[worst])
+                {
+                    worst = i;
+                }
+            }
+            String line = String.format("Tick %d: %.3fms", capture.tick, capture.duration/1000000.0D);
+            if (worst >= 0)
+            {
+                line += String.format(", worst %s: %.3fms", CarpetProfiler.section_label(capture.sections[worst]),
+                        (capture.ends[worst]-capture.starts[worst])/1000000.0D);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    public static int captured()
+    {
+        return captures.size();
+    }
+
+    private static JsonObject trace_event(String name, String category, int pid, int tid, long start, long duration)
+    {
+        JsonObject event = new JsonObject();
+        event.addProperty("name", name);
+        event.addProperty("cat", category);
+        event.addProperty("ph", "X");
+        event.addProperty("pid", pid);
+        event.addProperty("tid", tid);
+        event.addProperty("ts", start/1000.0D);
+        event.addProperty("dur", duration/1000.0D);
+        return event;
+    }
+
+    private static JsonObject process_name(int pid, String name)
+    {
+        JsonObject event = new JsonObject();
+        event.addProperty("name", "process_name");
+        event.addProperty("ph", "M");
+        event.addProperty("pid", pid);
+        JsonObject args = new JsonObject();
+        args.addProperty("name", name);
+        event.add("args", args);
+        return event;
+    }
+
+    /**
+     * Writes kept ticks as Chrome trace event json, each tick as a separate process with times relative to its start.
+     */
+    public static void dump(File file) throws IOException
+    {
+        JsonArray events = new JsonArray();
+        for (int rank = 0; rank < captures.size(); rank++)
+        {
+            Capture capture = captures.get(rank);
+            int pid = rank+1;
+            events.add(process_name(pid, String.format("#%d tick %d (%.1fms)", pid, capture.tick, capture.duration/1000000.0D)));
+            events.add(trace_event("Tick", "tick", pid, 1, 0L, capture.duration));
+            for (int i = 0; i < capture.sections.length; i++)
+            {
+                events.add(trace_event(CarpetProfiler.section_label(capture.sections[i]), "section", pid, 1,
+                        capture.starts[i]-capture.start, capture.ends[i]-capture.starts[i]));
+            }
+            for (int i = 0; i < capture.offenders.length; i++)
+            {
+                events.add(trace_event(capture.offenders[i], "entity", pid, 1,
+                        capture.offender_starts[i]-capture.start, capture.offender_ends[i]-capture.offender_starts[i]));
+            }
+        }
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs())
+        {
+            throw new IOException("Cannot create "+folder);
+        }
+        Files.write(file.toPath(), trace.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
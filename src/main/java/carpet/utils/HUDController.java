@@ -4,6 +4,7 @@ import carpet.helpers.HopperCounter;
 import carpet.helpers.TickSpeed;
 import carpet.logging.LoggerRegistry;
 import carpet.logging.logHelpers.PacketCounter;
+import carpet.logging.logHelpers.TickTimeHistogram;
 import net.minecraft.entity.EnumCreatureType;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
@@ -13,6 +14,7 @@ import net.minecraft.util.Tuple;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TextComponentString;
+import net.minecraft.world.dimension.DimensionType;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -54,7 +56,7 @@ public class HUDController
         player_huds.clear();
 
         if (LoggerRegistry.__tps)
-            LoggerRegistry.getLogger("tps").log(()-> send_tps_display(server));
+            LoggerRegistry.getLogger("tps").log((option)-> "average".equals(option) ? send_tps_display(server) : send_tick_times_display(option));
 
         if (LoggerRegistry.__mobcaps)
             LoggerRegistry.getLogger("mobcaps").log((option, player) -> {
@@ -91,11 +93,49 @@ public class HUDController
     private static ITextComponent [] send_tps_display(MinecraftServer server)
     {
         double MSPT = MathHelper.average(server.tickTimeArray) * 1.0E-6D;
-        double TPS = 1000.0D / Math.max((TickSpeed.time_warp_start_time != 0)?0.0:TickSpeed.mspt, MSPT);
+        double TPS = 1000.0D / Math.max((TickSpeed.time_warp_start_time != 0)?0.0:TickSpeed.nspt*1.0E-6D, MSPT);
         String color = Messenger.heatmap_color(MSPT,TickSpeed.mspt);
-        return new ITextComponent[]{Messenger.c(
-                "g TPS: ", String.format(Locale.US, "%s %.1f",color, TPS),
-                "g  MSPT: ", String.format(Locale.US,"%s %.1f", color, MSPT))};
+        List<Object> components = new ArrayList<>();
+        components.add("g TPS: ");
+        components.add(String.format(Locale.US, "%s %.1f",color, TPS));
+        components.add("g  MSPT: ");
+        components.add(String.format(Locale.US,"%s %.1f", color, MSPT));
+        for (DimensionType dimension : TickSpeed.dimension_tickrates().keySet())
+        {
+            components.add("g  "+dimension.toString().replaceFirst("minecraft:","")+": ");
+            components.add(String.format(Locale.US, "%s %.1f",color, TickSpeed.dimension_tps(dimension, TPS)));
+        }
+        return new ITextComponent[]{Messenger.c(components.toArray(new Object[0]))};
+    }
+
+    private static ITextComponent [] send_tick_times_display(String option)
+    {
+        int seconds;
+        try
+        {
+            seconds = TickTimeHistogram.window(Integer.parseInt(option));
+        }
+        catch (NumberFormatException e)
+        {
+            seconds = TickTimeHistogram.window(60);
+        }
+        long [] stats = TickTimeHistogram.stats(seconds);
+        if (stats == null)
+        {
+            return new ITextComponent[]{Messenger.c("g No ticks yet")};
+        }
+        List<Object> components = new ArrayList<>();
+        String [] labels = {"g min: ", "g  p50: ", "g  p95: ", "g  max: "};
+        for (int i = 0; i < labels.length; i++)
+        {
+            double MSPT = stats[i] * 1.0E-6D;
+            components.add(labels[i]);
+            components.add(String.format(Locale.US, "%s %.1f", Messenger.heatmap_color(MSPT, TickSpeed.mspt), MSPT));
+        }
+        components.add("g  over: ");
+        components.add(String.format(Locale.US, "%s %d", stats[4] > 0 ? "r" : "w", stats[4]));
+        components.add("g  ("+seconds+"s)");
+        return new ITextComponent[]{Messenger.c(components.toArray(new Object[0]))};
     }
 
     private static ITextComponent [] send_mobcap_display(int dim)
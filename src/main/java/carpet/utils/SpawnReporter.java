@@ -1,6 +1,7 @@
 
 package carpet.utils;
 
+import carpet.helpers.TickBudget;
 import java.util.List;
 
 import java.util.ArrayList;
@@ -82,10 +83,13 @@ public class SpawnReporter
                 return;
             }
         }
-        
-        long count = spawn_stats.get(type).getOrDefault(mob, 0L);
-        spawn_stats.get(type).put(mob, count + value);
-        spawned_mobs.get(type).put(new SpawnPos(mob, new BlockPos(el)), 1);
+        BlockPos spawn_pos = new BlockPos(el);
+        TickBudget.defer_if_over_budget(() ->
+        {
+            long count = spawn_stats.get(type).getOrDefault(mob, 0L);
+            spawn_stats.get(type).put(mob, count + value);
+            spawned_mobs.get(type).put(new SpawnPos(mob, spawn_pos), 1);
+        });
     }
 
 